@@ -11,6 +11,8 @@ import ws.nmathe.saber.core.settings.GuildSettingsManager;
 import ws.nmathe.saber.utils.HttpUtilities;
 import ws.nmathe.saber.utils.Logging;
 
+import java.util.ArrayList;
+
 /**
  * Load point for the bot application
  * Used to connect the various important elements together
@@ -38,11 +40,14 @@ public class Main
             System.exit(0);
         }
 
-        mongoDriver.init();         // ready database
-        calendarConverter.init();   // connect to calendar service
+        mongoDriver.init();          // ready database
+        guildSettingsManager.init(); // load the prefix index
+        scheduleManager.load();      // load the schedule index
+        calendarConverter.init();    // connect to calendar service
 
         // create the shard manager
-        shardManager = new ShardManager(botSettingsManager.getShards(), botSettingsManager.getShardTotal());
+        // (the shard manager consumes its list of shards, so pass a copy)
+        shardManager = new ShardManager(new ArrayList<>(botSettingsManager.getShards()), botSettingsManager.getShardTotal());
     }
 
     /*
@@ -0,0 +1,103 @@
+package ws.nmathe.saber.commands.admin;
+
+import net.dv8tion.jda.api.entities.ChannelType;
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.commands.Command;
+import ws.nmathe.saber.commands.CommandInfo;
+import ws.nmathe.saber.core.command.CommandParser.EventCompat;
+import ws.nmathe.saber.core.schedule.ActionWatchdog;
+import ws.nmathe.saber.utils.MessageUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Sorts.descending;
+
+/**
+ * reports entry actions which are running, awaiting retry, or have been dead-lettered
+ */
+public class ActionsCommand implements Command
+{
+    // maximum number of lines to list per section
+    private static final int LIMIT = 10;
+
+    // maximum length of a dead-lettered action's error, and of a message
+    private static final int ERROR_LENGTH = 200;
+    private static final int MAX_LENGTH = 2000;
+
+    @Override
+    public String name()
+    {
+        return "actions";
+    }
+
+    @Override
+    public CommandInfo info(String prefix)
+    {
+        return null;
+    }
+
+    @Override
+    public String verify(String prefix, String[] args, EventCompat event)
+    {
+        return "";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void action(String prefix, String[] args, EventCompat event)
+    {
+        ActionWatchdog watchdog = Main.getEntryManager().getWatchdog();
+
+        List<String> lines = new ArrayList<>();
+        this.section(lines, "Running", watchdog.getRunning());
+        this.section(lines, "Retrying", watchdog.getRetries());
+
+        lines.add("\"Dead-lettered\" (" + watchdog.getDeadLetteredCount() + " suppressed)");
+        Main.getDBDriver().getDeadLetterCollection().find()
+                .sort(descending("time"))
+                .limit(LIMIT)
+                .forEach((Consumer<? super Document>) document ->
+                {
+                    String error = String.valueOf(document.getString("error"));
+                    if (error.length() > ERROR_LENGTH) error = error.substring(0, ERROR_LENGTH) + "...";
+                    lines.add(document.getInteger("entryId") + " " + document.getString("action") + " at " +
+                            document.getDate("time").toInstant() + ": " + error);
+                });
+
+        // split across messages which fit discord's length limit
+        String open = "```python\n", close = "```";
+        StringBuilder msg = new StringBuilder(open);
+        for (String line : lines)
+        {
+            if (msg.length() > open.length() && msg.length() + line.length() + 1 + close.length() > MAX_LENGTH)
+            {
+                this.send(msg.append(close).toString(), event);
+                msg = new StringBuilder(open);
+            }
+            msg.append(line).append("\n");
+        }
+        this.send(msg.append(close).toString(), event);
+    }
+
+    private void send(String msg, EventCompat event)
+    {
+        if(event.isFromType(ChannelType.PRIVATE))
+        {
+            MessageUtilities.sendPrivateMsg( msg, event.getAuthor(), null );
+        }
+        else
+        {
+            MessageUtilities.sendMsg( msg, event.getChannel(), null );
+        }
+    }
+
+    private void section(List<String> lines, String title, List<String> section)
+    {
+        lines.add("\"" + title + "\" (" + section.size() + ")");
+        section.stream().limit(LIMIT).forEach(lines::add);
+        lines.add("");
+    }
+}
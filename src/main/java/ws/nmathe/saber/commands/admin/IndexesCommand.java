@@ -0,0 +1,143 @@
+package ws.nmathe.saber.commands.admin;
+
+import com.mongodb.client.MongoCollection;
+import net.dv8tion.jda.api.entities.ChannelType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.commands.Command;
+import ws.nmathe.saber.commands.CommandInfo;
+import ws.nmathe.saber.core.command.CommandParser.EventCompat;
+import ws.nmathe.saber.utils.Logging;
+import ws.nmathe.saber.utils.MessageUtilities;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * runs explain on the bot's hot query shapes and reports
+ * collection scans and the ratio of documents examined to documents returned
+ */
+public class IndexesCommand implements Command
+{
+    @Override
+    public String name()
+    {
+        return "indexes";
+    }
+
+    @Override
+    public CommandInfo info(String prefix)
+    {
+        return null;
+    }
+
+    @Override
+    public String verify(String prefix, String[] args, EventCompat event)
+    {
+        return "";
+    }
+
+    @Override
+    public void action(String prefix, String[] args, EventCompat event)
+    {
+        MongoCollection<Document> events = Main.getDBDriver().getEventCollection();
+        MongoCollection<Document> schedules = Main.getDBDriver().getScheduleCollection();
+        Date now = new Date();
+
+        // query shapes, sample values do not need to match any documents
+        Map<String, Bson> eventQueries = new LinkedHashMap<>();
+        eventQueries.put("next_action", and(Main.getDBDriver().onLocalShards(), lte("next_action_at", now)));
+        eventQueries.put("daily", and(Main.getDBDriver().onLocalShards(), gt("next_action_at", now)));
+        eventQueries.put("channel", eq("channelId", "0"));
+        eventQueries.put("guild", eq("guildId", "0"));
+        eventQueries.put("message", eq("messageId", "0"));
+        eventQueries.put("google", and(eq("channelId", "0"), eq("googleId", "0")));
+        eventQueries.put("expire", and(Main.getDBDriver().onLocalShards(), lte("expire", now)));
+
+        // sort orders of the sorted query shapes
+        Map<String, Bson> eventSorts = new HashMap<>();
+        eventSorts.put("channel", ascending("start"));
+
+        Map<String, Bson> scheduleQueries = new LinkedHashMap<>();
+        scheduleQueries.put("guild", eq("guildId", "0"));
+        scheduleQueries.put("sync", and(Main.getDBDriver().onLocalShards(), ne("sync_address", "off"), lte("sync_time", now)));
+
+        StringBuilder msg = new StringBuilder("```python\n\"Events\"\n");
+        eventQueries.forEach((name, query) -> msg.append(this.audit(name, events, query, eventSorts.get(name))));
+        msg.append("\n\"Schedules\"\n");
+        scheduleQueries.forEach((name, query) -> msg.append(this.audit(name, schedules, query, null)));
+        msg.append("```");
+
+        if(event.isFromType(ChannelType.PRIVATE))
+        {
+            MessageUtilities.sendPrivateMsg( msg.toString(), event.getAuthor(), null );
+        }
+        else
+        {
+            MessageUtilities.sendMsg( msg.toString(), event.getChannel(), null );
+        }
+    }
+
+    /**
+     * explains a query and summarizes the winning plan and its execution statistics
+     * @param sort the query's sort order, or null
+     * @return a single line report
+     */
+    private String audit(String name, MongoCollection<Document> collection, Bson query, Bson sort)
+    {
+        try
+        {
+            Document explain = Main.getDBDriver().explain(collection, query, sort);
+            Document planner = (Document) explain.get("queryPlanner");
+            Document stats = (Document) explain.get("executionStats");
+
+            List<String> stages = new ArrayList<>();
+            this.collectStages((Document) planner.get("winningPlan"), stages);
+
+            long returned = ((Number) stats.get("nReturned")).longValue();
+            long examined = ((Number) stats.get("totalDocsExamined")).longValue();
+            long keys = ((Number) stats.get("totalKeysExamined")).longValue();
+            String ratio = String.format("%.1f", (double) examined / Math.max(returned, 1));
+
+            return String.format("%12s: %s%s\n%14sdocs %d/%d (%s), keys %d\n",
+                    name, stages.contains("COLLSCAN") ? "[COLLSCAN] " : "", String.join(" < ", stages),
+                    "", examined, returned, ratio, keys);
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+            return String.format("%12s: explain failed (%s)\n", name, e.getMessage());
+        }
+    }
+
+    /**
+     * walks a query plan collecting its stages (and the index used by index scans)
+     */
+    @SuppressWarnings("unchecked")
+    private void collectStages(Document plan, List<String> stages)
+    {
+        if (plan == null) return;
+
+        String stage = plan.getString("stage");
+        if (plan.getString("indexName") != null)
+        {
+            stage += "(" + plan.getString("indexName") + ")";
+        }
+        stages.add(stage);
+
+        this.collectStages((Document) plan.get("inputStage"), stages);
+        List<Document> inputs = (List<Document>) plan.get("inputStages");
+        if (inputs != null)
+        {
+            inputs.forEach(input -> this.collectStages(input, stages));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ws.nmathe.saber.commands.admin;
 
+import com.google.common.cache.CacheStats;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.ChannelType;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
@@ -7,6 +8,8 @@ import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
 import ws.nmathe.saber.commands.CommandInfo;
 import ws.nmathe.saber.core.command.CommandParser.EventCompat;
+import ws.nmathe.saber.core.schedule.EntryExecutor;
+import ws.nmathe.saber.core.settings.GuildSettingsManager;
 import ws.nmathe.saber.utils.MessageUtilities;
 
 import java.lang.management.ManagementFactory;
@@ -42,6 +45,11 @@ public class StatsCommand implements Command
         Runtime rt = Runtime.getRuntime();
         RuntimeMXBean rb = ManagementFactory.getRuntimeMXBean();
 
+        EntryExecutor executor = Main.getEntryManager().getExecutor();
+        long[] totals = executor.getTotals();
+        GuildSettingsManager guildSettings = Main.getGuildSettingsManager();
+        CacheStats cache = guildSettings.getCacheStats();
+
         String msg = "```python\n" +
                 "\"Database\"\n" +
                 "      Entries: " + Main.getDBDriver().getEventCollection().count() + "\n" +
@@ -52,6 +60,18 @@ public class StatsCommand implements Command
                 "       Guilds: " + event.getJDA().getGuilds().size() + "\n" +
                 "        Users: " + event.getJDA().getUsers().size() + "\n" +
                 "ResponseTotal: " + event.getJDA().getResponseTotal() + "\n" +
+                "\n\"Actions\"\n" +
+                "      Running: " + executor.getRunning() + "\n" +
+                "       Queued: " + executor.getQueued() + " (" + executor.getQueuedGuilds() + " guilds)\n" +
+                "    Max-depth: " + executor.getMaxGuildDepth() + "\n" +
+                "    Submitted: " + totals[0] + " (" + totals[1] + " coalesced)\n" +
+                "     Rejected: " + totals[2] + "\n" +
+                "    Completed: " + totals[3] + "\n" +
+                "\n\"Guild Settings\"\n" +
+                "       Cached: " + guildSettings.getCacheSize() + " (" + guildSettings.getUnsavedCount() + " unsaved)\n" +
+                "         Hits: " + cache.hitCount() + "\n" +
+                "       Misses: " + cache.missCount() + "\n" +
+                "     Prefixes: " + guildSettings.getPrefixIndex().size() + "\n" +
                 "\n\"Application\"\n" +
                 " Memory-total: " +rt.totalMemory()/1024/1024 + " MB\n" +
                 "       -free : " + rt.freeMemory()/1024/1024 + " MB\n" +
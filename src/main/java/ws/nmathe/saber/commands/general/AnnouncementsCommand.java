@@ -1,7 +1,6 @@
 package ws.nmathe.saber.commands.general;
 
 import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
@@ -126,10 +125,6 @@ public class AnnouncementsCommand implements Command
         Integer entryId = ParsingUtilities.encodeIDToInt(args[index]);
         ScheduleEntry entry = Main.getEntryManager().getEntry( entryId );
 
-        // verify the entry's message exists
-        Message msg = entry.getMessageObject();
-        if(msg == null) return;
-
         index++;
 
         if(args.length > 2)
@@ -7,7 +7,6 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import org.bson.Document;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
 import ws.nmathe.saber.commands.CommandInfo;
@@ -25,7 +24,6 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Updates.set;
 
 /**
  * Command which is used to adjust the schedule settings for a channel
@@ -74,7 +72,10 @@ public class ConfigCommand implements Command
                         " SHIFT+Enter.\n" +
                         "However, be sure to encapsulate the entire string (new lines included) in quotations." +
                         "\n\n" +
-                        "To reset a custom message or channel to the default pass **reset** as the command parameter.";
+                        "To reset a custom message or channel to the default pass **reset** as the command parameter." +
+                        "\n\n" +
+                        "If many events on the schedule begin at the same time, turn on the ``coalesce`` option to have " +
+                        "announcements sent to the same channel at the same time combined into as few messages as possible.";
         info.addUsageCategory(cat3, cont3);
 
         String cat4 = "+ Event RSVP";
@@ -101,6 +102,7 @@ public class ConfigCommand implements Command
         info.addUsageExample(cmd + " #guild_events end-remind \"10 min\"");
         info.addUsageExample(cmd + " #events_channel chan \"general\"");
         info.addUsageExample(cmd + " #events_channel remind-msg \"reset\"");
+        info.addUsageExample(cmd + " #events_channel coalesce on");
         info.addUsageExample(cmd + " #schedule rsvp on");
         info.addUsageExample(cmd + " #schedule rsvp add DPS :crossed_swords:");
         info.addUsageExample(cmd + " #schedule rsvp remove Undecided");
@@ -191,6 +193,29 @@ public class ConfigCommand implements Command
                     }
                     break;
 
+                case "coalesce":
+                case "combine":
+                    if (args.length < 3)
+                    {
+                        return "That's not enough arguments!\n" +
+                                "Use ``" + cmd + " [#channel] coalesce <on|off>`` to configure whether announcements " +
+                                "sent to the same channel at the same time are combined into one message.";
+                    }
+                    switch(args[index].toLowerCase())
+                    {
+                        case "yes":
+                        case "no":
+                        case "false":
+                        case "true":
+                        case "on":
+                        case "off":
+                            break;
+
+                        default:
+                            return "Announcement coalescing should be either *on* or *off*!";
+                    }
+                    break;
+
                 case "z":
                 case "zone":
                     if (args.length < 3)
@@ -654,6 +679,21 @@ public class ConfigCommand implements Command
                     MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.ANN, event.getJDA()), event.getChannel(), null);
                     break;
 
+                case "coalesce":
+                case "combine":
+                    boolean coalesce = false;
+                    switch(args[index].toLowerCase())
+                    {
+                        case "yes":
+                        case "on":
+                        case "true":
+                            coalesce = true;
+                            break;
+                    }
+                    Main.getScheduleManager().setCoalescingAnnouncements(cId, coalesce);
+                    MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.ANN, event.getJDA()), event.getChannel(), null);
+                    break;
+
                 case "z":
                 case "zone":
                 case "zones":
@@ -692,8 +732,7 @@ public class ConfigCommand implements Command
                                 primaryZone = altZones.iterator().next();
 
                                 // disable auto-sync'ing timezone
-                                Main.getDBDriver().getScheduleCollection()
-                                        .updateOne(eq("_id", scheduleChan.getId()), set("timezone_sync", false));
+                                Main.getScheduleManager().setTimeZoneSync(scheduleChan.getId(), false);
                             }
                             break;
 
@@ -702,8 +741,7 @@ public class ConfigCommand implements Command
                             altZones.remove(primaryZone);
 
                             // disable auto-sync'ing timezone
-                            Main.getDBDriver().getScheduleCollection()
-                                    .updateOne(eq("_id", scheduleChan.getId()), set("timezone_sync", false));
+                            Main.getScheduleManager().setTimeZoneSync(scheduleChan.getId(), false);
                             break;
                     }
 
@@ -712,8 +750,8 @@ public class ConfigCommand implements Command
                     Main.getScheduleManager().setAltZones(scheduleChan.getId(), new ArrayList<>(altZones));
 
                     // reload each entry on the schedule
-                    Main.getEntryManager().getEntriesFromChannel(scheduleChan.getId())
-                            .forEach(se -> Main.getEntryManager().reloadEntry(se.getId()));
+                    Main.getEntryManager().getSummariesFromChannel(scheduleChan.getId())
+                            .forEach(summary -> Main.getEntryManager().reloadEntry(summary.getId()));
 
                     MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.MISC, event.getJDA()), event.getChannel(), null);
                     break;
@@ -723,9 +761,8 @@ public class ConfigCommand implements Command
                     Main.getScheduleManager().setClockFormat(scheduleChan.getId(), args[index]);
 
                     // reload the schedule display
-                    Main.getDBDriver().getEventCollection().find(eq("channelId", scheduleChan.getId()))
-                            .forEach((Consumer<? super Document>) document ->
-                                    Main.getEntryManager().reloadEntry((Integer) document.get("_id")));
+                    Main.getEntryManager().getSummariesFromChannel(scheduleChan.getId())
+                            .forEach(summary -> Main.getEntryManager().reloadEntry(summary.getId()));
 
                     MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.MISC, event.getJDA()), event.getChannel(), null);
                     break;
@@ -771,11 +808,11 @@ public class ConfigCommand implements Command
                     Main.getScheduleManager().setReminders(cId, rem);
 
                     // for every entry on channel, update
-                    Main.getDBDriver().getEventCollection().find(eq("channelId", scheduleChan.getId()))
-                            .forEach((Consumer<? super Document>) document ->
+                    Main.getDBDriver().getEntryCollection().find(eq("channelId", scheduleChan.getId()))
+                            .forEach((Consumer<? super ScheduleEntry>) entry ->
                             {
                                 // reload entry reminders
-                                ScheduleEntry se = new ScheduleEntry(document)
+                                ScheduleEntry se = entry
                                         .reloadReminders(Main.getScheduleManager().getReminders(scheduleChan.getId()));
                                 Main.getEntryManager().updateEntry(se, false);
                             });
@@ -794,11 +831,11 @@ public class ConfigCommand implements Command
                     Main.getScheduleManager().setEndReminders(cId, rem2);
 
                     // for every entry on channel, update
-                    Main.getDBDriver().getEventCollection().find(eq("channelId", scheduleChan.getId()))
-                            .forEach((Consumer<? super Document>) document ->
+                    Main.getDBDriver().getEntryCollection().find(eq("channelId", scheduleChan.getId()))
+                            .forEach((Consumer<? super ScheduleEntry>) entry ->
                             {
                                 // reload entry reminders
-                                ScheduleEntry se = new ScheduleEntry(document)
+                                ScheduleEntry se = entry
                                         .reloadEndReminders(Main.getScheduleManager().getEndReminders(scheduleChan.getId()));
                                 Main.getEntryManager().updateEntry(se, false);
                             });
@@ -885,27 +922,17 @@ public class ConfigCommand implements Command
                     if(new_enabled == null)
                     {
                         // for each entry on the schedule
-                        Main.getDBDriver().getEventCollection()
+                        Main.getDBDriver().getEntryCollection()
                                 .find(eq("channelId", scheduleChan.getId()))
-                                .forEach((Consumer<? super Document>) document ->
+                                .forEach((Consumer<? super ScheduleEntry>) se ->
                                 {
-                                    // clear reactions
-                                    event.getGuild().getTextChannelById(document.getString("channelId"))
-                                            .retrieveMessageById(document.getString("messageId")).complete()
-                                            .clearReactions().queue((message) ->
-                                    {
-                                        Map<String, String> map = Main.getScheduleManager()
-                                                .getRSVPOptions(document.getString("channelId"));
-                                        ScheduleEntry se = new ScheduleEntry(document);
+                                    // clear reactions, then add the reaction options
+                                    Map<String, String> map = Main.getScheduleManager()
+                                            .getRSVPOptions(se.getChannelId());
+                                    MessageUtilities.clearReactionsById(scheduleChan, se.getMessageId(), cleared ->
+                                            EntryManager.addRSVPReactions(map, clearEmoji, scheduleChan, se.getMessageId(), se));
 
-                                        // add reaction options
-                                        event.getGuild()
-                                                .getTextChannelById(document.getString("channelId"))
-                                                .retrieveMessageById(document.getString("messageId"))
-                                                .queue(msg -> EntryManager.addRSVPReactions(map, clearEmoji, msg, se));
-                                    });
-
-                                    Main.getEntryManager().reloadEntry(document.getInteger("_id"));
+                                    Main.getEntryManager().reloadEntry(se.getId());
                                 });
                     }
                     // otherwise, if the rsvp setting was changes
@@ -915,35 +942,28 @@ public class ConfigCommand implements Command
 
                         if(new_enabled)
                         {   // for each entry on the schedule
-                            Main.getDBDriver().getEventCollection()
+                            Main.getDBDriver().getEntryCollection()
                                     .find(eq("channelId", scheduleChan.getId()))
-                                    .forEach((Consumer<? super Document>) document ->
+                                    .forEach((Consumer<? super ScheduleEntry>) se ->
                                     {
                                         Map<String, String> map = Main.getScheduleManager()
-                                                .getRSVPOptions(document.getString("channelId"));
-                                        ScheduleEntry se = new ScheduleEntry(document);
+                                                .getRSVPOptions(se.getChannelId());
 
                                         // add reaction options
-                                        event.getGuild()
-                                                .getTextChannelById(document.getString("channelId"))
-                                                .retrieveMessageById(document.getString("messageId"))
-                                                .queue(msg -> EntryManager.addRSVPReactions(map, clearEmoji, msg, se));
+                                        EntryManager.addRSVPReactions(map, clearEmoji, scheduleChan, se.getMessageId(), se);
 
-                                        Main.getEntryManager().reloadEntry(document.getInteger("_id"));
+                                        Main.getEntryManager().reloadEntry(se.getId());
                                     });
                         }
                         else
                         {   // for each entry on the schedule
-                            Main.getDBDriver().getEventCollection()
-                                    .find(eq("channelId", scheduleChan.getId()))
-                                    .forEach((Consumer<? super Document>) document ->
+                            Main.getEntryManager().getSummariesFromChannel(scheduleChan.getId())
+                                    .forEach(summary ->
                                     {
                                         // clear reactions
-                                        event.getGuild().getTextChannelById(document.getString("channelId"))
-                                                .retrieveMessageById(document.getString("messageId")).complete()
-                                                .clearReactions().queue();
+                                        MessageUtilities.clearReactionsById(scheduleChan, summary.getMessageId(), null);
 
-                                        Main.getEntryManager().reloadEntry(document.getInteger("_id"));
+                                        Main.getEntryManager().reloadEntry(summary.getId());
                                     });
                         }
                     }
@@ -968,9 +988,8 @@ public class ConfigCommand implements Command
                     Map<String, String> rsvpOptions = Main.getScheduleManager().getRSVPOptions(cId);
                     Main.getEntryManager().getEntriesFromChannel(cId).forEach(se->
                     {
-                        Message message = se.getMessageObject();
-                        message.clearReactions().complete();
-                        EntryManager.addRSVPReactions(rsvpOptions, finalEmoji, message, se);
+                        MessageUtilities.clearReactionsById(scheduleChan, se.getMessageId(), cleared ->
+                                EntryManager.addRSVPReactions(rsvpOptions, finalEmoji, scheduleChan, se.getMessageId(), se));
                     });
                     MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.RSVP, event.getJDA()), event.getChannel(), null);
                     break;
@@ -1035,11 +1054,8 @@ public class ConfigCommand implements Command
                     else if(style.equals("narrow")) Main.getScheduleManager().setStyle(cId, style);
 
                     // for each entry on the schedule
-                    Main.getDBDriver().getEventCollection()
-                            .find(eq("channelId", scheduleChan.getId()))
-                            .forEach((Consumer<? super Document>) document ->
-                                    Main.getEntryManager().reloadEntry(document.getInteger("_id"))
-                            );
+                    Main.getEntryManager().getSummariesFromChannel(scheduleChan.getId())
+                            .forEach(summary -> Main.getEntryManager().reloadEntry(summary.getId()));
                     MessageUtilities.sendMsg(this.genMsgStr(cId, Mode.MISC, event.getJDA()), event.getChannel(), null);
                     break;
 
@@ -1171,6 +1187,8 @@ public class ConfigCommand implements Command
                         (Main.getScheduleManager().isEndChannelOverridden(cId) ?
                                 "\"" + this.channelIdentifierToString(endChanIdentifier, jda) + "\"" :
                                 "(using [channel])") +
+                        "\n[coalesce] " +
+                        "\""+ (Main.getScheduleManager().isCoalescingAnnouncements(cId) ? "on" : "off") + "\"" +
                         "```";
 
                 if(mode == Mode.ANN) break;
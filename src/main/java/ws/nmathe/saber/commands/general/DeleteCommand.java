@@ -1,6 +1,5 @@
 package ws.nmathe.saber.commands.general;
 
-import net.dv8tion.jda.api.entities.Message;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
 import ws.nmathe.saber.commands.CommandInfo;
@@ -102,12 +101,9 @@ public class DeleteCommand implements Command
             // delete single event
             Integer entryId = ParsingUtilities.encodeIDToInt(args[0]);
             ScheduleEntry entry = Main.getEntryManager().getEntry(entryId);
-            Message msg = entry.getMessageObject();
-            if( msg==null )
-                return;
-
-            Main.getEntryManager().removeEntry(entryId);
-            MessageUtilities.deleteMsg(msg, null);
+            Main.getEntryManager().removeEntry(entryId, entry.getMessageId());
+            MessageUtilities.deleteMsgById(event.getGuild().getTextChannelById(entry.getChannelId()),
+                    entry.getMessageId(), null);
             MessageUtilities.sendMsg("The event with :id: " +
                     ParsingUtilities.intToEncodedID(entryId) + " removed.", event.getChannel(), null);
         }
@@ -1,7 +1,6 @@
 package ws.nmathe.saber.commands.general;
 
 import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import ws.nmathe.saber.Main;
@@ -11,7 +10,6 @@ import ws.nmathe.saber.core.command.CommandParser.EventCompat;
 import ws.nmathe.saber.core.schedule.EntryManager;
 import ws.nmathe.saber.core.schedule.EventRecurrence;
 import ws.nmathe.saber.core.schedule.ScheduleEntry;
-import ws.nmathe.saber.utils.Logging;
 import ws.nmathe.saber.utils.MessageUtilities;
 import ws.nmathe.saber.utils.ParsingUtilities;
 import ws.nmathe.saber.utils.VerifyUtilities;
@@ -496,9 +494,6 @@ public class EditCommand implements Command
         Integer entryId  = ParsingUtilities.encodeIDToInt(args[index]);
         ScheduleEntry se = Main.getEntryManager().getEntry( entryId );
 
-        Message msg = se.getMessageObject();
-        if (msg==null) return;
-
         //
         // edit the event if command contains more arguments than the event ID,
         // otherwise skip this and print out the event configuration
@@ -903,12 +898,13 @@ public class EditCommand implements Command
             Main.getEntryManager().updateEntry(se, true);
             if (limitsChanged) // if the limits on the event was changed, reload the reactions
             {
-                se.getMessageObject().clearReactions().queue(message->
+                TextChannel channel = event.getGuild().getTextChannelById(se.getChannelId());
+                MessageUtilities.clearReactionsById(channel, se.getMessageId(), cleared ->
                 {
                     Map<String, String> options = Main.getScheduleManager().getRSVPOptions(se.getChannelId());
                     String clearEmoji = Main.getScheduleManager().getRSVPClear(se.getChannelId());
-                    EntryManager.addRSVPReactions(options, clearEmoji, se.getMessageObject(), se);
-                }, failure-> Logging.exception(this.getClass(), failure));
+                    EntryManager.addRSVPReactions(options, clearEmoji, channel, se.getMessageId(), se);
+                });
             }
         }
 
@@ -10,11 +10,11 @@ import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
 import ws.nmathe.saber.commands.CommandInfo;
 import ws.nmathe.saber.core.command.CommandParser.EventCompat;
-import ws.nmathe.saber.core.schedule.ScheduleEntry;
+import ws.nmathe.saber.core.schedule.EntrySummary;
 import ws.nmathe.saber.utils.MessageUtilities;
 import ws.nmathe.saber.utils.ParsingUtilities;
 
-import java.time.ZonedDateTime;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -109,47 +109,43 @@ public class EventsCommand implements Command
                         footer = "(events list continued on next page)";
                         content = new StringBuilder();
                     }
-                    // for each schedule, generate a list of events scheduled
-                    Collection<ScheduleEntry> entries = Main.getEntryManager().getEntriesFromChannel(sId);
-                    if(!entries.isEmpty())
+                    // for each schedule, generate a list of events scheduled (in order of start)
+                    boolean first = true;
+                    for(EntrySummary top : Main.getEntryManager().getSummariesFromChannel(sId))
                     {
-                        content.append("<#").append(sId).append("> ...\n");  // start a new schedule list
-                        while(!entries.isEmpty())
+                        if(first)
                         {
-                            if (content.length() > 1800)
-                            {
-                                sendEventsMessage(footer, title, content, event.getChannel());
-
-                                // adjust title and footer to reflect future messages are a continuation
-                                title = "Events on " + guild.getName() + " (continued)";
-                                footer = "(events list continued on next page)";
-                                content = new StringBuilder();
-                            }
-
-                            // find and remove the next earliest occurring event
-                            ScheduleEntry top = entries.toArray(new ScheduleEntry[entries.size()])[0];
-                            for(ScheduleEntry se : entries)
-                            {
-                                if(se.getStart().isBefore(top.getStart())) top = se;
-                            }
-                            entries.remove(top);
-
-                            // determine time until the event begins/ends
-                            long timeTil = ZonedDateTime.now().until(top.getStart(), ChronoUnit.MINUTES);
-                            String status = "begins";
-                            if (timeTil < 0)    // adjust if event is ending
-                            {
-                                timeTil = ZonedDateTime.now().until(top.getEnd(), ChronoUnit.MINUTES);
-                                status = "ends";
-                            }
-
-                            // add the event as a single line in the content
-                            content.append(":id:``").append(ParsingUtilities.intToEncodedID(top.getId()))
-                                    .append("`` ~ **").append(top.getTitle()).append("** ").append(status).append(" in *");
-                            ParsingUtilities.addTimeGap(content, timeTil, false, 3);
-                            content.append("*\n");
-                            count++;     // iterate event counter
+                            content.append("<#").append(sId).append("> ...\n");  // start a new schedule list
+                            first = false;
                         }
+                        if (content.length() > 1800)
+                        {
+                            sendEventsMessage(footer, title, content, event.getChannel());
+
+                            // adjust title and footer to reflect future messages are a continuation
+                            title = "Events on " + guild.getName() + " (continued)";
+                            footer = "(events list continued on next page)";
+                            content = new StringBuilder();
+                        }
+
+                        // determine time until the event begins/ends
+                        long timeTil = Instant.now().until(top.getStart(), ChronoUnit.MINUTES);
+                        String status = "begins";
+                        if (timeTil < 0)    // adjust if event is ending
+                        {
+                            timeTil = Instant.now().until(top.getEnd(), ChronoUnit.MINUTES);
+                            status = "ends";
+                        }
+
+                        // add the event as a single line in the content
+                        content.append(":id:``").append(ParsingUtilities.intToEncodedID(top.getId()))
+                                .append("`` ~ **").append(top.getTitle()).append("** ").append(status).append(" in *");
+                        ParsingUtilities.addTimeGap(content, timeTil, false, 3);
+                        content.append("*\n");
+                        count++;     // iterate event counter
+                    }
+                    if(!first)
+                    {
                         content.append("\n"); // end a schedule list
                     }
                 }
@@ -3,15 +3,12 @@ package ws.nmathe.saber.commands.general;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import org.bson.Document;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
 import ws.nmathe.saber.commands.CommandInfo;
 import ws.nmathe.saber.core.command.CommandParser.EventCompat;
 import ws.nmathe.saber.utils.MessageUtilities;
 
-import java.util.function.Consumer;
-
 import static com.mongodb.client.model.Filters.eq;
 
 /**
@@ -135,13 +132,8 @@ public class InitCommand implements Command
                 if(Main.getScheduleManager().isSchedule(chan.getId()))
                 {   // clear the channel of events
                     TextChannel finalChan = chan;
-                    Main.getDBDriver().getEventCollection().find(eq("channelId", chan.getId()))
-                            .forEach((Consumer<? super Document>) document ->
-                            {
-                                String msgId = document.getString("messageId");
-                                finalChan.deleteMessageById(msgId).complete();
-                                Main.getEntryManager().removeEntry(document.getInteger("_id"));
-                            });
+                    Main.getEntryManager().removeEntries(eq("channelId", chan.getId()))
+                            .forEach(messageId -> MessageUtilities.deleteMsgById(finalChan, messageId, null));
                     body = "The schedule <#" + chanId + "> has been cleared!";
                 }
                 else
@@ -68,7 +68,7 @@ public class SchedulesCommand implements Command
             content.append("<#")
                     .append(sId)
                     .append("> - has ")
-                    .append(Main.getEntryManager().getEntriesFromChannel(sId).size())
+                    .append(Main.getEntryManager().countEntriesOnChannel(sId))
                     .append(" events\n");
         }
 
@@ -14,6 +14,7 @@ import ws.nmathe.saber.utils.VerifyUtilities;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 /**
  * used for generating the list of valid timezone strings
@@ -79,22 +80,39 @@ public class SkipCommand implements Command
     {
         int index = 0;
         Integer entryId = ParsingUtilities.encodeIDToInt(args[index++]);
-        ScheduleEntry se = Main.getEntryManager().getEntryFromGuild(entryId, event.getGuild().getId());
+        String guildId = event.getGuild().getId();
+        ScheduleEntry entry = Main.getEntryManager().getEntryFromGuild(entryId, guildId);
+        boolean repeats = entry.getRecurrence().shouldRepeat(entry.getStart());
 
-        // send a confirmation to the channel
-        String content;
-        if(se.getRecurrence().shouldRepeat(se.getStart()))
+        // skip the event through the entry executor, and send a confirmation to the channel once it has been skipped
+        Main.getEntryManager().skipEntry(entryId, guildId).thenAccept(se ->
         {
-            se.repeat();
-            content = "The event has been cancelled.\n" +
-                    "The event is next scheduled for " +
-                    se.getStart().format(DateTimeFormatter.ofPattern("MMM d, hh:mm a"));
-        }
-        else
+            String content;
+            if(repeats)
+            {
+                content = "The event has been cancelled.\n" +
+                        "The event is next scheduled for " +
+                        se.getStart().format(DateTimeFormatter.ofPattern("MMM d, hh:mm a"));
+            }
+            else
+            {
+                content = "The event has been cancelled.";
+            }
+            MessageUtilities.sendMsg(content, event.getChannel(), null);
+        }).exceptionally(e ->
         {
-            se.repeat();
-            content = "The event has been cancelled.";
-        }
-        MessageUtilities.sendMsg(content, event.getChannel(), null);
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            if (cause instanceof IllegalStateException)
+            {
+                Logging.warn(this.getClass(), "Unable to skip entry [" + entryId + "]: " + cause.getMessage());
+            }
+            else
+            {
+                Logging.exception(this.getClass(), cause);
+            }
+            MessageUtilities.sendMsg("The event could not be skipped (" + cause.getMessage() + "), try again shortly.",
+                    event.getChannel(), null);
+            return null;
+        });
     }
 }
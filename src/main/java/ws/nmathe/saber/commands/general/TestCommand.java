@@ -1,6 +1,5 @@
 package ws.nmathe.saber.commands.general;
 
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.Command;
@@ -109,10 +108,6 @@ public class TestCommand implements Command
         Integer entryId = ParsingUtilities.encodeIDToInt(args[index]);
         ScheduleEntry entry = Main.getEntryManager().getEntry( entryId );
 
-        // verify the entry's message exists
-        Message msg = entry.getMessageObject();
-        if(msg == null) return;
-
         index++;
 
         String format = Main.getScheduleManager().getStartAnnounceFormat(entry.getChannelId());
@@ -2,15 +2,17 @@ package ws.nmathe.saber.core;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.events.channel.ChannelCreateEvent;
 import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateNameEvent;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import org.apache.commons.lang3.StringUtils;
-import org.bson.Document;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.core.schedule.ScheduleEntry;
 import ws.nmathe.saber.core.settings.GuildSettingsManager;
+import ws.nmathe.saber.core.settings.PrefixIndex;
 import ws.nmathe.saber.utils.*;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
@@ -21,8 +23,11 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import static com.mongodb.client.model.Filters.eq;
 
@@ -31,8 +36,22 @@ import static com.mongodb.client.model.Filters.eq;
  */
 public class EventListener extends ListenerAdapter
 {
+    // prefixes accepted on every guild in addition to the guild's own prefix
+    private static final String BOT_MENTION = "<@250801603630596100>";
+    private static final String ESCAPE_PREFIX = "!?!?!?";
+
     private final RateLimiter reactionLimiter = new RateLimiter(50);
 
+    // prefix -> pattern matching the commands accepted in private messages
+    private final Map<String, Pattern> privatePatterns = new ConcurrentHashMap<>();
+
+    EventListener()
+    {
+        PrefixIndex index = Main.getGuildSettingsManager().getPrefixIndex();
+        index.pin(BOT_MENTION);
+        index.pin(ESCAPE_PREFIX);
+    }
+
     @Override
     public void onReady(ReadyEvent event)
     {
@@ -72,10 +91,8 @@ public class EventListener extends ListenerAdapter
         String prefix = Main.getBotSettingsManager().getCommandPrefix();
         if (event.isFromType(ChannelType.PRIVATE) && !userId.equals(event.getJDA().getSelfUser().getId()))
         {
-            String a = "("+prefix+")?help(.+)?$";
-            String b = "("+prefix+")?oauth(.+)?$";
             // info and setup general commands
-            if (content.matches(a) || content.matches(b))
+            if (this.privatePattern(prefix).matcher(content).matches())
             {
                 Main.getCommandHandler().handleCommand(event, 0, prefix);
                 return;
@@ -112,9 +129,12 @@ public class EventListener extends ListenerAdapter
         //}
 
         /* command processing */
+        // discard the message if it does not begin with any prefix in use
+        if (!Main.getGuildSettingsManager().getPrefixIndex().mayBeCommand(content)) return;
+
         // set prefix to local guild prefix or bot @mention
         GuildSettingsManager.GuildSettings guildSettings = Main.getGuildSettingsManager().getGuildSettings(event.getGuild().getId());
-        String botID = "<@250801603630596100>";
+        String botID = BOT_MENTION;
         //if (content.matches("<@"+event.getJDA().getSelfUser().getId()+">([ ]*)(.)*"))
         //{   // use @mention as prefix
         //    prefix = "<@"+event.getJDA().getSelfUser().getId()+">";
@@ -123,9 +143,9 @@ public class EventListener extends ListenerAdapter
         {   // use @mention as prefix
             prefix = botID;
         }
-        else if (content.trim().startsWith("!?!?!?"))
+        else if (content.trim().startsWith(ESCAPE_PREFIX))
         {
-            prefix = "!?!?!?";
+            prefix = ESCAPE_PREFIX;
         }
         else
         {   // use local guild prefix
@@ -139,15 +159,7 @@ public class EventListener extends ListenerAdapter
             String trimmedContent = StringUtils.replaceOnce(content, prefix, "").trim();
 
             // check if command is restricted on the guild
-            Boolean isRestricted = true;
-            for(String command : guildSettings.getUnrestrictedCommands())
-            {
-                if(trimmedContent.startsWith(command))
-                {
-                    isRestricted = false;
-                    break;
-                }
-            }
+            boolean isRestricted = !guildSettings.isUnrestricted(trimmedContent);
 
             // if the command is restricted on the guild
             // check if the guild has a custom command channel and if the channel IDs match,
@@ -180,6 +192,16 @@ public class EventListener extends ListenerAdapter
         }
     }
 
+    /**
+     * @param prefix the default command prefix
+     * @return pattern matching the help and oauth commands, with or without the prefix
+     */
+    private Pattern privatePattern(String prefix)
+    {
+        return this.privatePatterns.computeIfAbsent(prefix,
+                key -> Pattern.compile("(" + Pattern.quote(key) + ")?(help|oauth)(.+)?$"));
+    }
+
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event)
     {
@@ -188,10 +210,8 @@ public class EventListener extends ListenerAdapter
         String userId = event.getUser().getId();             // the ID of the user
         if (event.getChannelType().equals(ChannelType.PRIVATE) && !userId.equals(event.getJDA().getSelfUser().getId()))
         {
-            String a = "("+prefix+")?help(.+)?$";
-            String b = "("+prefix+")?oauth(.+)?$";
             // info and setup general commands
-            if (content.matches(a) || content.matches(b))
+            if (this.privatePattern(prefix).matcher(content).matches())
             {
                 Main.getCommandHandler().handleCommand(event, 0, prefix);
                 return;
@@ -209,15 +229,7 @@ public class EventListener extends ListenerAdapter
         String trimmedContent = StringUtils.replaceOnce(content, prefix, "").trim();
 
         // check if command is restricted on the guild
-        Boolean isRestricted = true;
-        for(String command : guildSettings.getUnrestrictedCommands())
-        {
-            if(trimmedContent.startsWith(command))
-            {
-                isRestricted = false;
-                break;
-            }
-        }
+        boolean isRestricted = !guildSettings.isUnrestricted(trimmedContent);
 
         // if the command is restricted on the guild
         // check if the guild has a custom command channel and if the channel IDs match,
@@ -306,20 +318,47 @@ public class EventListener extends ListenerAdapter
     @Override
     public void onMessageDelete( MessageDeleteEvent event )
     {
+        // ignore messages which do not display an entry
+        if (!Main.getEntryManager().getTrackedMessages().isTracked(event.getChannel().getId(), event.getMessageId())) return;
+
         // delete the event if the delete message was an event message
-        Main.getDBDriver().getEventCollection().findOneAndDelete(eq("messageId", event.getMessageId()));
+        Main.getEntryManager().removeEntries(eq("messageId", event.getMessageId()));
+    }
+
+    @Override
+    public void onChannelCreate(ChannelCreateEvent event)
+    {
+        // a new channel may be the target of an announcement by name
+        if (event.isFromGuild())
+        {
+            Main.getScheduleManager().invalidateAnnouncementTargets(event.getGuild().getId());
+        }
+    }
+
+    @Override
+    public void onChannelUpdateName(ChannelUpdateNameEvent event)
+    {
+        if (event.isFromGuild())
+        {
+            Main.getScheduleManager().invalidateAnnouncementTargets(event.getGuild().getId());
+        }
     }
 
     @Override
     public void onChannelDelete(ChannelDeleteEvent event)
     {
         String cId = event.getChannel().getId();
+        if (event.isFromGuild())
+        {
+            Main.getScheduleManager().invalidateAnnouncementTargets(event.getGuild().getId());
+        }
 
         // if the deleted channel was a schedule, clear the db entries
         if(Main.getScheduleManager().isSchedule(cId))
         {
-            Main.getDBDriver().getEventCollection().deleteMany(eq("channelId", cId));
+            Main.getEntryManager().removeEntries(eq("channelId", cId));
             Main.getDBDriver().getScheduleCollection().deleteOne(eq("_id", cId));
+            Main.getScheduleManager().forget(cId);
         }
     }
 
@@ -331,7 +370,7 @@ public class EventListener extends ListenerAdapter
         String memberId = event.getUser().getId();
 
         // remove user from any events they have rsvp'ed to
-        Collection<ScheduleEntry> entries = Main.getEntryManager().getEntriesFromGuild(event.getGuild().getId());
+        Iterable<ScheduleEntry> entries = Main.getEntryManager().getEntriesFromGuild(event.getGuild().getId());
         for(ScheduleEntry se : entries)
         {
             boolean updateFlag = false;
@@ -361,6 +400,9 @@ public class EventListener extends ListenerAdapter
         // stop processing if the event is not from a guild text channel
         if (!event.isFromType(ChannelType.TEXT)) return;
 
+        // don't process reactions added to messages which do not display an entry
+        if (!Main.getEntryManager().getTrackedMessages().isTracked(event.getChannel().getId(), event.getMessageId())) return;
+
         // don't process reactions added on non RSVP channels
         if(!Main.getScheduleManager().isRSVPEnabled(event.getChannel().getId())) return;
 
@@ -373,12 +415,16 @@ public class EventListener extends ListenerAdapter
         // add the user to the appropriate rsvp list and remove the emoji
         try
         {
-            Document doc = Main.getDBDriver().getEventCollection()
-                    .find(eq("messageId", event.getMessageId())).first();
+            // use the entry held by an open rsvp window, otherwise load the entry
+            ScheduleEntry se = Main.getEntryManager().getRsvpAccumulator().getEntry(event.getMessageId());
+            if(se == null)
+            {
+                se = Main.getDBDriver().getEntryCollection()
+                        .find(eq("messageId", event.getMessageId())).first();
+            }
 
-            if(doc != null)
+            if(se != null)
             {
-                ScheduleEntry se = new ScheduleEntry(doc);
                 boolean removeReaction = se.handleRSVPReaction(event);
                 if (removeReaction)
                 {
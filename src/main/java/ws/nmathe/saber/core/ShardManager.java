@@ -230,9 +230,33 @@ public class ShardManager
      */
     public JDA getShard(String guildId)
     {
+        return jdaShards.get(getShardId(guildId));
+    }
+
+    /**
+     * Computes the ID of the shard responsible for a guild
+     * Only depends upon the bot settings, so may be used before the shards have been started
+     * @param guildId ID of guild
+     * @return shard ID (always 0 when sharding is disabled)
+     */
+    public static int getShardId(String guildId)
+    {
+        int shardTotal = Main.getBotSettingsManager().getShardTotal();
+        if (shardTotal <= 0) return 0;
+
         long id = MiscUtil.parseSnowflake(guildId);
-        long shardId = (id >> 22) % Main.getBotSettingsManager().getShardTotal();
-        return jdaShards.get((int) shardId);
+        return (int) ((id >> 22) % shardTotal);
+    }
+
+    /**
+     * Retrieves the IDs of the shards run by this instance of the bot
+     * Only depends upon the bot settings, so may be used before the shards have been started
+     * @return list of shard IDs
+     */
+    public static List<Integer> getLocalShardIds()
+    {
+        if (Main.getBotSettingsManager().getShardTotal() <= 0) return Collections.singletonList(0);
+        return Main.getBotSettingsManager().getShards();
     }
 
 
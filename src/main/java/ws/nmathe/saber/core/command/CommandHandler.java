@@ -81,6 +81,8 @@ public class CommandHandler
         adminCommands.put((new ReloadSettingsCommand()).name(), new ReloadSettingsCommand());
         adminCommands.put((new ClearLocksCommand()).name(), new ClearLocksCommand());
         adminCommands.put((new ShardsCommand()).name(), new ShardsCommand());
+        adminCommands.put((new IndexesCommand()).name(), new IndexesCommand());
+        adminCommands.put((new ActionsCommand()).name(), new ActionsCommand());
 
         initialized = true;
     }
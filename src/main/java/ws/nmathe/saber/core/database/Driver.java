@@ -4,11 +4,28 @@ import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
 import ws.nmathe.saber.Main;
+import ws.nmathe.saber.core.ShardManager;
+import ws.nmathe.saber.core.schedule.ScheduleEntry;
+import ws.nmathe.saber.core.schedule.ScheduleEntryCodec;
+import ws.nmathe.saber.utils.Logging;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Indexes.ascending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
 public class Driver
 {
     private MongoDatabase db;
@@ -18,13 +35,131 @@ public class Driver
         // for a connection to the Mongo database
         // connection properties should be configured via the URI used in the bot toml file
         MongoClient mongoClient = new MongoClient(new MongoClientURI(Main.getBotSettingsManager().getMongoURI()));
-        db = mongoClient.getDatabase("saberDB");
+        // entries are read and written through their codec rather than as generic documents
+        CodecRegistry codecRegistry = fromRegistries(MongoClient.getDefaultCodecRegistry(),
+                fromCodecs(new ScheduleEntryCodec()));
+        db = mongoClient.getDatabase("saberDB").withCodecRegistry(codecRegistry);
+
+        // make sure every query the bot runs is backed by an index
+        this.createIndexes();
+
+        // tag schedules and events with the shard responsible for them
+        this.assignShards(this.getScheduleCollection());
+        this.assignShards(this.getEventCollection());
 
         // schedule a thread to prune disconnected guild, schedules, and events from the database
         ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
         executor.scheduleAtFixedRate(new Pruner(), 12, 12, TimeUnit.HOURS);
     }
 
+    /**
+     * creates the indexes used by the bot's queries,
+     * index creation is a no-op for indexes which already exist
+     */
+    private void createIndexes()
+    {
+        List<IndexModel> eventIndexes = Arrays.asList(
+                // entry processor look-ahead window, and shard-local scans
+                new IndexModel(ascending("shard", "next_action_at")),
+                // events on a schedule, in order of start
+                new IndexModel(ascending("channelId", "start")),
+                // google calendar sync lookups
+                new IndexModel(ascending("channelId", "googleId")),
+                new IndexModel(ascending("guildId")),
+                new IndexModel(ascending("messageId")),
+                // shard-local expiration purge
+                new IndexModel(ascending("shard", "expire")));
+
+        List<IndexModel> scheduleIndexes = Arrays.asList(
+                new IndexModel(ascending("guildId")),
+                // schedule syncer, and shard-local scans
+                new IndexModel(ascending("shard", "sync_address", "sync_time")));
+
+        this.createIndexes(this.getEventCollection(), eventIndexes);
+        this.createIndexes(this.getScheduleCollection(), scheduleIndexes);
+    }
+
+    /**
+     * helper to createIndexes(), indexes are created individually so that
+     * one conflicting index definition does not prevent the creation of the others
+     */
+    private void createIndexes(MongoCollection<Document> collection, List<IndexModel> indexes)
+    {
+        for (IndexModel index : indexes)
+        {
+            try
+            {
+                collection.createIndex(index.getKeys(), index.getOptions());
+            }
+            catch (Exception e)
+            {
+                Logging.warn(this.getClass(), "Unable to create index " + index.getKeys() + " on " +
+                        collection.getNamespace().getCollectionName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * sets the shard fields on documents which predate the fields or were assigned under a different shard total,
+     * documents are updated a guild at a time since all documents of a guild belong to the same shard
+     */
+    private void assignShards(MongoCollection<Document> collection)
+    {
+        int shardTotal = Main.getBotSettingsManager().getShardTotal();
+        Bson query = ne("shard_total", shardTotal);
+        for (String guildId : collection.distinct("guildId", query, String.class))
+        {
+            try
+            {
+                collection.updateMany(and(eq("guildId", guildId), query), combine(
+                        set("shard", ShardManager.getShardId(guildId)),
+                        set("shard_total", shardTotal)));
+            }
+            catch (Exception e)
+            {
+                Logging.exception(this.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * @return query filter which matches schedule and event documents of the shards run by this instance of the bot
+     */
+    public Bson onLocalShards()
+    {
+        return in("shard", ShardManager.getLocalShardIds());
+    }
+
+    /**
+     * runs the explain command (with execution statistics) for a find query
+     * @param collection the collection to query
+     * @param filter the query filter
+     * @return the explain output document
+     */
+    public Document explain(MongoCollection<Document> collection, Bson filter)
+    {
+        return this.explain(collection, filter, null);
+    }
+
+    /**
+     * runs the explain command (with execution statistics) for a sorted find query
+     * @param collection the collection to query
+     * @param filter the query filter
+     * @param sort the sort order, or null if the query is not sorted
+     * @return the explain output document
+     */
+    public Document explain(MongoCollection<Document> collection, Bson filter, Bson sort)
+    {
+        Document find = new Document("find", collection.getNamespace().getCollectionName())
+                .append("filter", filter.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        if (sort != null)
+        {
+            find.append("sort", sort.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        }
+        Document command = new Document("explain", find).append("verbosity", "executionStats");
+        return db.runCommand(command);
+    }
+
     public MongoCollection<Document> getScheduleCollection()
     {
         return db.getCollection("schedules");
@@ -35,8 +170,23 @@ public class Driver
         return db.getCollection("events");
     }
 
+    public MongoCollection<ScheduleEntry> getEntryCollection()
+    {
+        return db.getCollection("events", ScheduleEntry.class);
+    }
+
     public MongoCollection<Document> getGuildCollection()
     {
         return db.getCollection("guilds");
     }
+
+    public MongoCollection<Document> getDeadLetterCollection()
+    {
+        return db.getCollection("dead_letters");
+    }
+
+    public MongoCollection<Document> getCounterCollection()
+    {
+        return db.getCollection("counters");
+    }
 }
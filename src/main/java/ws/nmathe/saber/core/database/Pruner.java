@@ -49,8 +49,10 @@ public class Pruner implements Runnable
                         if(guild == null)
                         {
                             Main.getDBDriver().getGuildCollection().deleteOne(eq("_id", guildId));
-                            Main.getDBDriver().getEventCollection().deleteMany(eq("guildId", guildId));
+                            Main.getEntryManager().removeEntries(eq("guildId", guildId));
                             Main.getDBDriver().getScheduleCollection().deleteMany(eq("guildId", guildId));
+                            Main.getScheduleManager().forgetGuild(guildId);
+                            Main.getGuildSettingsManager().invalidate(guildId);
                             Logging.info(this.getClass(), "Pruned guild with ID: " + guildId);
                         }
                     }
@@ -61,7 +63,7 @@ public class Pruner implements Runnable
                 });
 
         // purge schedules that the bot cannot connect to
-        query = new Document();
+        query = Main.getDBDriver().onLocalShards();
         Main.getDBDriver().getScheduleCollection().find(query)
                 .projection(fields(include("_id", "guildId")))
                 .forEach((Consumer<? super Document>) document ->
@@ -80,8 +82,9 @@ public class Pruner implements Runnable
                         MessageChannel channel = jda.getTextChannelById(chanId);
                         if(channel == null)
                         {
-                            Main.getDBDriver().getEventCollection().deleteMany(eq("channeldId", chanId));
+                            Main.getEntryManager().removeEntries(eq("channelId", chanId));
                             Main.getDBDriver().getScheduleCollection().deleteMany(eq("_id", chanId));
+                            Main.getScheduleManager().forget(chanId);
                             Logging.info(this.getClass(), "Pruned schedule with channel ID: " + chanId);
                         }
                     }
@@ -93,7 +96,7 @@ public class Pruner implements Runnable
 
 
         // purge events for which the bot cannot access the message
-        query = new Document();
+        query = Main.getDBDriver().onLocalShards();
         Main.getDBDriver().getEventCollection().find(query)
                 .projection(fields(include("_id", "messageId", "channelId", "guildId")))
                 .forEach((Consumer<? super Document>) document ->
@@ -113,7 +116,7 @@ public class Pruner implements Runnable
                         String messageId = document.getString("messageId");
                         if(messageId == null)
                         {
-                            Main.getDBDriver().getEventCollection().deleteOne(eq("_id", eventId));
+                            Main.getEntryManager().removeEntry(eventId, null);
                             Logging.info(this.getClass(), "Pruned event with ID: " + eventId);
                             return;
                         }
@@ -132,13 +135,13 @@ public class Pruner implements Runnable
                                 {
                                     if(message == null)
                                     {
-                                        Main.getDBDriver().getEventCollection().deleteOne(eq("_id", eventId));
+                                        Main.getEntryManager().removeEntry(eventId, messageId);
                                         Logging.info(this.getClass(), "Pruned event with ID: " + eventId + " on channel with ID: " + channelId);
                                     }
                                 },
                                 throwable ->
                                 {
-                                    Main.getDBDriver().getEventCollection().deleteOne(eq("_id", eventId));
+                                    Main.getEntryManager().removeEntry(eventId, messageId);
                                     Logging.info(this.getClass(), "Pruned event with ID: " + eventId + " on channel with ID: " + channelId);
                                 });
                     }
@@ -5,9 +5,7 @@ import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.model.*;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.TextChannel;
-import org.bson.Document;
 import org.bson.conversions.Bson;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.core.schedule.EntryManager;
@@ -21,7 +19,6 @@ import java.io.IOException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Consumer;
 
 import static com.mongodb.client.model.Filters.*;
 
@@ -103,7 +100,7 @@ public class CalendarConverter
         }
 
         Integer failure[] = { 0 };
-        Collection<ScheduleEntry> entries = Main.getEntryManager().getEntriesFromChannel(channel.getId());
+        Iterable<ScheduleEntry> entries = Main.getEntryManager().getEntriesFromChannel(channel.getId());
         entries.forEach(se->
         {
             // compose the event's description
@@ -206,9 +203,7 @@ public class CalendarConverter
             // change the zone to match the calendar
             // only if the zone has not been manually set for that schedule
             ZoneId zone = ZoneId.of( events.getTimeZone() );
-            Boolean syncZone = Main.getDBDriver().getScheduleCollection().find(eq("_id", channel.getId()))
-                    .first().getBoolean("timezone_sync", false);
-            if(syncZone)
+            if(Main.getScheduleManager().isTimeZoneSync(channel.getId()))
             {
                 Main.getScheduleManager().setTimeZone( channel.getId(), zone );
             }
@@ -368,7 +363,7 @@ public class CalendarConverter
 
                         // if the google event already exists as a saber event on the schedule, update it
                         // otherwise add as a new saber event
-                        Document doc = Main.getDBDriver().getEventCollection()
+                        ScheduleEntry existing = Main.getDBDriver().getEntryCollection()
                                 .find(and(
                                         eq("channelId", channel.getId()),
                                         eq("googleId", googleId))).first();
@@ -376,9 +371,9 @@ public class CalendarConverter
                         // should the event be flagged as already started?
                         boolean hasStarted = start.isBefore(ZonedDateTime.now());
 
-                        if(doc != null && (new ScheduleEntry(doc)).getMessageObject() != null)
+                        if(existing != null)
                         {   /* update an existing event */
-                            ScheduleEntry se = (new ScheduleEntry(doc))
+                            ScheduleEntry se = existing
                                     .setTitle(title)
                                     .setStart(start)
                                     .setEnd(end)
@@ -445,16 +440,8 @@ public class CalendarConverter
             // purge channel of all entries on schedule that aren't in uniqueEvents
             Bson query = and(   eq("channelId", channel.getId()),
                                 nin("googleId", uniqueEvents));
-            Main.getDBDriver().getEventCollection().find(query)
-                    .forEach((Consumer<? super Document>) document ->
-                    {
-                        ScheduleEntry entry = Main.getEntryManager().getEntry((Integer) document.get("_id"));
-                        Message msg = entry.getMessageObject();
-                        if( msg==null ) return;
-
-                        Main.getEntryManager().removeEntry((Integer) document.get("_id"));
-                        MessageUtilities.deleteMsg(msg, null);
-                    });
+            Main.getEntryManager().removeEntries(query)
+                    .forEach(messageId -> MessageUtilities.deleteMsgById(channel, messageId, null));
 
             // set channel topic
             JDA jda = Main.getShardManager().getJDA(channel.getGuild().getId());
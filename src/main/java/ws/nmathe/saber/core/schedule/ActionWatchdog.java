@@ -0,0 +1,269 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.core.schedule.ScheduleEntry.ActionType;
+import ws.nmathe.saber.utils.Logging;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Supervises the entry actions run by the entry processor.
+ * Actions which exceed a time limit are abandoned: the action is failed so that its executor slot is freed,
+ * its entry's lease is no longer extended (and is left to expire rather than released), and whatever
+ * the action would still have announced is dropped.
+ * Failed actions are retried with an exponential backoff, and actions which fail repeatedly are recorded
+ * in the dead letter collection and suppressed (until the entry's next action changes, or the bot restarts).
+ */
+public class ActionWatchdog
+{
+    // seconds an action may run before it is abandoned
+    private static final int TIMEOUT_SECONDS = 120;
+
+    // attempts made before an action is dead-lettered, and the delay before the first retry
+    private static final int MAX_ATTEMPTS = 4;
+    private static final int BACKOFF_SECONDS = 15;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ActionWatchdog-%d").setDaemon(true).build());
+
+    private final Map<Integer, Running> running = new ConcurrentHashMap<>();  // actions in progress
+    private final Map<Integer, Retry> retries = new ConcurrentHashMap<>();    // failed actions awaiting retry
+    private final Map<Integer, Instant> deadLettered = new ConcurrentHashMap<>(); // entry ID -> suppressed action time
+
+    /**
+     * starts an entry's action under the time limit,
+     * once the action has finished (or has been abandoned), a failed action is scheduled for retry or dead-lettered
+     * @param se the entry
+     * @param action the entry's due action
+     * @param lease the lease held on the entry while the action runs
+     * @param body starts the action
+     * @return future completed once the action has finished, or completed exceptionally once it is abandoned
+     */
+    CompletableFuture<Void> run(ScheduleEntry se, ActionType action, EntryLease lease,
+                                Supplier<CompletableFuture<Void>> body)
+    {
+        // identifies the action for retries, read before the action advances the entry
+        Instant due = se.getNextActionTime();
+
+        Running task = new Running(se, action);
+        this.running.put(se.getId(), task);
+
+        // settled by whichever comes first, the action finishing or the time limit
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        ScheduledFuture<?> timeout = this.timer.schedule(() ->
+        {
+            TimeoutException failure = new TimeoutException("exceeded " + TIMEOUT_SECONDS + "s");
+            se.abandon();
+            if (!outcome.completeExceptionally(failure)) return;
+
+            task.expired = true;
+            lease.abandon();
+            Logging.warn(this.getClass(), "Action " + action + " on '" + se.getTitle() + "' [" + se.getId() +
+                    "] has exceeded " + TIMEOUT_SECONDS + "s and has been abandoned");
+            this.fail(se, action, due, failure);
+        }, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> started;
+        try
+        {
+            started = body.get();
+        }
+        catch (Exception e)
+        {
+            started = new CompletableFuture<>();
+            started.completeExceptionally(e);
+        }
+
+        started.whenComplete((value, failure) ->
+        {
+            timeout.cancel(false);
+            this.running.remove(se.getId(), task);
+            if (!outcome.complete(null))
+            {   // already abandoned, the outcome was decided by the time limit
+                Logging.info(this.getClass(), "Abandoned action " + action + " on '" + se.getTitle() + "' [" +
+                        se.getId() + "] finished after " + Duration.between(task.started, Instant.now()).getSeconds() + "s");
+                return;
+            }
+
+            if (failure == null)
+            {
+                this.retries.remove(se.getId());
+            }
+            else
+            {
+                this.fail(se, action, due, unwrap(failure));
+            }
+        });
+        return outcome;
+    }
+
+    /**
+     * @return the cause of a failure raised through a completion stage
+     */
+    static Throwable unwrap(Throwable e)
+    {
+        return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+    }
+
+    /**
+     * adjusts the time at which an entry should next be dispatched to account for
+     * pending retries and dead-lettered actions
+     * @param entryId the entry's ID
+     * @param due the time of the entry's next action
+     * @return the time to dispatch the entry, or null if the action is suppressed
+     */
+    Instant adjust(Integer entryId, Instant due)
+    {
+        if (due == null) return null;
+
+        Instant suppressed = this.deadLettered.get(entryId);
+        if (due.equals(suppressed)) return null;
+        if (suppressed != null)
+        {   // the entry has moved on to another action
+            this.deadLettered.remove(entryId, suppressed);
+        }
+
+        Retry retry = this.retries.get(entryId);
+        if (retry != null && retry.due.equals(due) && retry.at.isAfter(due))
+        {
+            return retry.at;
+        }
+        return due;
+    }
+
+    /**
+     * discards the retry and dead-letter state of an entry, used when the entry is removed
+     * @param entryId the entry's ID
+     */
+    void forget(Integer entryId)
+    {
+        this.retries.remove(entryId);
+        this.deadLettered.remove(entryId);
+    }
+
+    /**
+     * schedules a failed action to be retried or, once its attempts are exhausted, dead-letters it
+     * @param due the action's scheduled time, as read before the action ran
+     */
+    private void fail(ScheduleEntry se, ActionType action, Instant due, Throwable failure)
+    {
+        Retry previous = this.retries.get(se.getId());
+        int attempt = (previous != null && previous.due.equals(due)) ? previous.attempt + 1 : 1;
+
+        if (attempt < MAX_ATTEMPTS)
+        {
+            Instant at = Instant.now().plusSeconds(BACKOFF_SECONDS * (1L << (attempt - 1)));
+            if (failure instanceof TimeoutException)
+            {   // not before the abandoned action's lease has expired
+                Instant expiry = Instant.now().plusSeconds(EntryLease.LEASE_SECONDS);
+                if (at.isBefore(expiry)) at = expiry;
+            }
+            this.retries.put(se.getId(), new Retry(due, attempt, at));
+            Main.getEntryManager().getScheduler().schedule(se.getId(), se.getGuildId(), at);
+            Logging.warn(this.getClass(), "Action " + action + " on '" + se.getTitle() + "' [" + se.getId() +
+                    "] failed (attempt " + attempt + "), retrying at " + at + ": " + failure);
+            return;
+        }
+
+        this.retries.remove(se.getId());
+        this.deadLettered.put(se.getId(), due);
+        Logging.warn(this.getClass(), "Action " + action + " on '" + se.getTitle() + "' [" + se.getId() +
+                "] failed " + attempt + " times and has been dead-lettered: " + failure);
+        try
+        {
+            Main.getDBDriver().getDeadLetterCollection().insertOne(
+                    new Document("entryId", se.getId())
+                            .append("guildId", se.getGuildId())
+                            .append("channelId", se.getChannelId())
+                            .append("title", se.getTitle())
+                            .append("action", action.name().toLowerCase())
+                            .append("next_action_at", Date.from(due))
+                            .append("attempts", attempt)
+                            .append("error", String.valueOf(failure))
+                            .append("instance", EntryLease.INSTANCE_ID)
+                            .append("time", new Date()));
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+    }
+
+    /**
+     * @return description of each action in progress, longest running first
+     */
+    public List<String> getRunning()
+    {
+        List<Running> tasks = new ArrayList<>(this.running.values());
+        tasks.sort(Comparator.comparing(task -> task.started));
+
+        List<String> lines = new ArrayList<>();
+        for (Running task : tasks)
+        {
+            long seconds = Duration.between(task.started, Instant.now()).getSeconds();
+            lines.add(task.entryId + " " + task.action + " " + seconds + "s" +
+                    (task.expired ? " (abandoned)" : ""));
+        }
+        return lines;
+    }
+
+    /**
+     * @return description of each failed action awaiting retry
+     */
+    public List<String> getRetries()
+    {
+        List<String> lines = new ArrayList<>();
+        this.retries.forEach((entryId, retry) ->
+                lines.add(entryId + " attempt " + retry.attempt + ", next at " + retry.at));
+        return lines;
+    }
+
+    /**
+     * @return the number of dead-lettered actions currently suppressed
+     */
+    public int getDeadLetteredCount()
+    {
+        return this.deadLettered.size();
+    }
+
+    /**
+     * action in progress
+     */
+    private static class Running
+    {
+        private final Integer entryId;
+        private final ActionType action;
+        private final Instant started = Instant.now();
+        private volatile boolean expired = false;
+
+        Running(ScheduleEntry se, ActionType action)
+        {
+            this.entryId = se.getId();
+            this.action = action;
+        }
+    }
+
+    /**
+     * pending retry of an entry's action
+     */
+    private static class Retry
+    {
+        private final Instant due;   // the action's scheduled time, identifies the action being retried
+        private final int attempt;
+        private final Instant at;
+
+        Retry(Instant due, int attempt, Instant at)
+        {
+            this.due = due;
+            this.attempt = attempt;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.TextChannel;
+import ws.nmathe.saber.utils.Logging;
+import ws.nmathe.saber.utils.MessageUtilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines announcements sent to the same channel at the same time (for schedules which opt in).
+ * The first announcement for a channel opens a short window, announcements for the channel made during the
+ * window are sent together when it closes, in as few messages as the message length limit allows.
+ * Many events starting on the same minute then take a few requests against the channel's rate limit
+ * rather than one each, so that the later announcements are not delayed.
+ */
+class AnnouncementCoalescer
+{
+    // length of a window, in milliseconds
+    private static final int WINDOW_MILLIS = 1000;
+
+    // discord's limit on the length of a message
+    private static final int MAX_LENGTH = 2000;
+
+    private final Map<String, List<String>> pending = new ConcurrentHashMap<>();    // channel ID -> announcements
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("AnnouncementFlusher-%d").setDaemon(true).build());
+
+    /**
+     * queues an announcement, opening a window for the channel if it does not have one
+     * @param channel the channel to announce to
+     * @param content the announcement
+     */
+    void add(TextChannel channel, String content)
+    {
+        if (content.isEmpty()) return;
+
+        String channelId = channel.getId();
+        boolean[] opened = {false};
+        this.pending.compute(channelId, (key, announcements) ->
+        {
+            if (announcements == null)
+            {
+                announcements = new ArrayList<>();
+                opened[0] = true;
+            }
+            announcements.add(content);
+            return announcements;
+        });
+
+        if (opened[0])
+        {
+            JDA jda = channel.getJDA();
+            this.flusher.schedule(() -> this.flush(jda, channelId), WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * closes a channel's window and sends its announcements,
+     * announcements made after the window is removed open a new window
+     */
+    private void flush(JDA jda, String channelId)
+    {
+        List<String> announcements = this.pending.remove(channelId);
+        if (announcements == null) return;
+
+        try
+        {
+            TextChannel channel = jda.getTextChannelById(channelId);
+            if (channel == null) return;
+
+            StringBuilder content = new StringBuilder();
+            for (String announcement : announcements)
+            {
+                if (content.length() > 0 && content.length() + announcement.length() + 1 > MAX_LENGTH)
+                {
+                    MessageUtilities.sendMsg(content.toString(), channel, null);
+                    content = new StringBuilder();
+                }
+                if (content.length() > 0) content.append("\n");
+                content.append(announcement);
+            }
+            if (content.length() > 0) MessageUtilities.sendMsg(content.toString(), channel, null);
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves announcement targets (a channel ID or a channel name) to the IDs of the channels they designate.
+ * Resolutions are cached per guild, so that the channel a schedule announces to is resolved once rather than
+ * on every announcement. A guild's resolutions are discarded whenever one of its channels is
+ * created, renamed, or deleted.
+ */
+class AnnouncementTargets
+{
+    // guild ID -> target -> IDs of the channels the target resolves to
+    private Cache<String, Map<String, List<String>>> guilds = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * @param guild the guild to announce in
+     * @param target the announcement target, a channel ID or channel name
+     * @return IDs of the channels to announce to, empty if the target does not designate any channel
+     */
+    List<String> resolve(Guild guild, String target)
+    {
+        if (target == null || target.isEmpty()) return Collections.emptyList();
+        return this.guilds.asMap()
+                .computeIfAbsent(guild.getId(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(target, key -> resolveNow(guild, key));
+    }
+
+    /**
+     * discards the resolved targets of a guild
+     * @param gId (String) guild ID
+     */
+    void invalidate(String gId)
+    {
+        this.guilds.invalidate(gId);
+    }
+
+    /**
+     * the identifier is treated as a snowflake ID if it is all digits and a channel with that ID exists,
+     * otherwise as a channel name
+     */
+    private static List<String> resolveNow(Guild guild, String target)
+    {
+        if (target.matches("\\d+"))
+        {
+            TextChannel channel = guild.getTextChannelById(target);
+            if (channel != null) return Collections.singletonList(channel.getId());
+        }
+        return guild.getTextChannelsByName(target, true).stream()
+                .map(TextChannel::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,287 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ws.nmathe.saber.utils.Logging;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keyed executor for entry actions.
+ * Actions for the same entry are run one at a time, while actions for different entries run in parallel.
+ * Pending actions are queued per guild (with a bounded capacity) and guilds take turns
+ * in round-robin order, so that a single guild with many due entries cannot starve the others.
+ * Asynchronous actions hold a worker thread only while they are started, their entry is held
+ * (and counts towards the concurrency limit) until the action's future completes.
+ */
+public class EntryExecutor
+{
+    private final ExecutorService workers;
+    private final int concurrency;
+    private final int guildCapacity;
+
+    // all state below is guarded by 'this'
+    private final Map<String, Deque<Task>> queues = new HashMap<>(); // pending tasks per guild
+    private final Deque<String> ready = new ArrayDeque<>();          // guilds with pending tasks, in turn order
+    private final Map<Integer, Task> deferred = new HashMap<>();     // tasks waiting on a running task of the same entry
+    private final Set<Integer> pending = new HashSet<>();            // entries with a queued or deferred task
+    private final Map<String, Integer> waiting = new HashMap<>();    // queued and deferred tasks per guild
+    private final Set<Integer> active = new HashSet<>();             // entries with a running task
+    private long submitted = 0, coalesced = 0, rejected = 0, completed = 0;
+
+    /**
+     * @param name name prefix for the worker threads
+     * @param parallelism maximum number of actions run at once
+     * @param guildCapacity maximum number of actions queued for a single guild
+     */
+    EntryExecutor(String name, int parallelism, int guildCapacity)
+    {
+        this(name, parallelism, parallelism, guildCapacity);
+    }
+
+    /**
+     * @param name name prefix for the worker threads
+     * @param threads number of worker threads
+     * @param concurrency maximum number of actions in progress at once
+     * @param guildCapacity maximum number of actions queued for a single guild
+     */
+    EntryExecutor(String name, int threads, int concurrency, int guildCapacity)
+    {
+        this.concurrency = concurrency;
+        this.guildCapacity = guildCapacity;
+        this.workers = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * queues an action for an entry,
+     * if the entry already has an action waiting to run the new action is dropped
+     * (actions read the entry from the database when they run, so the waiting action covers both)
+     * @param guildId the guild the entry belongs to
+     * @param entryId the entry's ID
+     * @param action the action to run
+     * @return false if the guild's queue is full and the action was not accepted
+     */
+    boolean submit(String guildId, Integer entryId, Runnable action)
+    {
+        return this.submitAsync(guildId, entryId, () ->
+        {
+            action.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * queues an asynchronous action for an entry, the entry is released once the future returned by the action completes,
+     * if the entry already has an action waiting to run the new action is dropped
+     * @param guildId the guild the entry belongs to
+     * @param entryId the entry's ID
+     * @param action starts the action
+     * @return false if the guild's queue is full and the action was not accepted
+     */
+    boolean submitAsync(String guildId, Integer entryId, Supplier<? extends CompletionStage<?>> action)
+    {
+        return this.submitAsync(guildId, entryId, action, true);
+    }
+
+    /**
+     * queues an asynchronous action for an entry, the entry is released once the future returned by the action completes
+     * @param guildId the guild the entry belongs to
+     * @param entryId the entry's ID
+     * @param action starts the action
+     * @param coalesce if the action may be dropped in favour of an action already waiting to run for the entry,
+     *                 otherwise such an action is not accepted (for actions which differ from the entry's due action)
+     * @return false if the action was not accepted (the guild's queue is full, or the action could not be coalesced)
+     */
+    synchronized boolean submitAsync(String guildId, Integer entryId, Supplier<? extends CompletionStage<?>> action,
+                                     boolean coalesce)
+    {
+        if (this.pending.contains(entryId))
+        {
+            if (!coalesce)
+            {
+                this.rejected++;
+                return false;
+            }
+            this.coalesced++;
+            return true;
+        }
+
+        // deferred tasks count towards the guild's capacity, they join the guild's queue once their entry is free
+        if (this.waiting.getOrDefault(guildId, 0) >= this.guildCapacity)
+        {
+            this.rejected++;
+            return false;
+        }
+
+        Task task = new Task(guildId, entryId, action);
+        if (this.active.contains(entryId))
+        {   // run once the entry's current action completes
+            this.deferred.put(entryId, task);
+        }
+        else
+        {
+            this.enqueue(task);
+        }
+
+        this.waiting.merge(guildId, 1, Integer::sum);
+        this.pending.add(entryId);
+        this.submitted++;
+        this.dispatch();
+        return true;
+    }
+
+    /**
+     * hands queued tasks to the workers, taking one task from each guild in turn
+     */
+    private void dispatch()
+    {
+        while (this.active.size() < this.concurrency && !this.ready.isEmpty())
+        {
+            String guildId = this.ready.poll();
+            Deque<Task> queue = this.queues.get(guildId);
+            Task task = queue.poll();
+            if (queue.isEmpty())
+            {
+                this.queues.remove(guildId);
+            }
+            else
+            {   // back of the line
+                this.ready.add(guildId);
+            }
+
+            this.waiting.computeIfPresent(guildId, (k, n) -> n > 1 ? n - 1 : null);
+            this.pending.remove(task.entryId);
+            this.active.add(task.entryId);
+            this.workers.execute(task);
+        }
+    }
+
+    /**
+     * marks an entry's action as finished and queues the entry's deferred action, if any
+     */
+    private synchronized void complete(Integer entryId)
+    {
+        this.active.remove(entryId);
+        this.completed++;
+
+        Task next = this.deferred.remove(entryId);
+        if (next != null)
+        {   // admitted against the guild's capacity when it was submitted
+            this.enqueue(next);
+        }
+        this.dispatch();
+    }
+
+    /**
+     * adds an admitted task to the back of its guild's queue
+     */
+    private void enqueue(Task task)
+    {
+        Deque<Task> queue = this.queues.computeIfAbsent(task.guildId, k -> new ArrayDeque<>());
+        if (queue.isEmpty()) this.ready.add(task.guildId);
+        queue.add(task);
+    }
+
+    /**
+     * @return the number of actions waiting to run
+     */
+    public synchronized int getQueued()
+    {
+        return this.pending.size();
+    }
+
+    /**
+     * @return the number of actions currently in progress
+     */
+    public synchronized int getRunning()
+    {
+        return this.active.size();
+    }
+
+    /**
+     * @return the number of guilds with actions waiting to run
+     */
+    public synchronized int getQueuedGuilds()
+    {
+        return this.queues.size();
+    }
+
+    /**
+     * @return the length of the longest guild queue
+     */
+    public synchronized int getMaxGuildDepth()
+    {
+        return this.queues.values().stream().mapToInt(Deque::size).max().orElse(0);
+    }
+
+    /**
+     * @return counts of submitted, coalesced, rejected, and completed actions
+     */
+    public synchronized long[] getTotals()
+    {
+        return new long[]{this.submitted, this.coalesced, this.rejected, this.completed};
+    }
+
+    /**
+     * queued action, releases its entry when the action's future completes
+     */
+    private class Task implements Runnable
+    {
+        private final String guildId;
+        private final Integer entryId;
+        private final Supplier<? extends CompletionStage<?>> action;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        Task(String guildId, Integer entryId, Supplier<? extends CompletionStage<?>> action)
+        {
+            this.guildId = guildId;
+            this.entryId = entryId;
+            this.action = action;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                CompletionStage<?> stage = this.action.get();
+                if (stage == null)
+                {   // nothing to wait on
+                    this.finish();
+                    return;
+                }
+
+                stage.whenComplete((result, e) ->
+                {
+                    try
+                    {
+                        if (e != null) Logging.exception(EntryExecutor.class, e);
+                    }
+                    finally
+                    {
+                        this.finish();
+                    }
+                });
+            }
+            catch (Throwable e)
+            {
+                Logging.exception(EntryExecutor.class, e);
+                this.finish();
+            }
+        }
+
+        /**
+         * releases the task's slot, at most once however the action ends
+         */
+        private void finish()
+        {
+            if (this.finished.compareAndSet(false, true)) complete(this.entryId);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.utils.Logging;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Updates.*;
+
+/**
+ * Lease on an entry's document, held while one of the entry's actions is processed.
+ * A lease is taken with a conditional update which only succeeds when no other instance of the bot
+ * holds an unexpired lease on the entry, so that instances serving overlapping shards never run the same action.
+ * The lease is extended while the action runs and is released when it finishes,
+ * should the holder die (or abandon the action) the lease expires and the entry may be claimed by another instance.
+ */
+class EntryLease
+{
+    // identifies this instance of the bot in the claimed_by field
+    static final String INSTANCE_ID = hostname() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    // length of a lease, leases are extended every third of this
+    static final int LEASE_SECONDS = 60;
+
+    private static ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("EntryLease-%d").setDaemon(true).build());
+
+    private final Integer entryId;
+    private final ScheduleEntry entry;
+    private final ScheduledFuture<?> renewal;
+    private volatile boolean abandoned = false;
+
+    private EntryLease(Integer entryId, ScheduleEntry entry)
+    {
+        this.entryId = entryId;
+        this.entry = entry;
+        this.renewal = renewer.scheduleAtFixedRate(this::extend,
+                LEASE_SECONDS/3, LEASE_SECONDS/3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * attempts to claim an entry
+     * @param entryId ID of the entry to claim
+     * @return the lease, or null if the entry does not exist or is claimed by another instance
+     */
+    static EntryLease claim(Integer entryId)
+    {
+        Date now = new Date();
+        ScheduleEntry entry = Main.getDBDriver().getEntryCollection().findOneAndUpdate(
+                and(eq("_id", entryId),
+                        or(eq("claim_until", null), lt("claim_until", now), eq("claimed_by", INSTANCE_ID))),
+                combine(set("claimed_by", INSTANCE_ID), set("claim_until", expiry())),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        return entry == null ? null : new EntryLease(entryId, entry);
+    }
+
+    /**
+     * @return the entry, as read when the lease was claimed
+     */
+    ScheduleEntry getEntry()
+    {
+        return this.entry;
+    }
+
+    /**
+     * pushes back the expiration of the lease
+     */
+    private void extend()
+    {
+        try
+        {
+            Main.getDBDriver().getEventCollection().updateOne(
+                    and(eq("_id", this.entryId), eq("claimed_by", INSTANCE_ID)),
+                    set("claim_until", expiry()));
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+    }
+
+    /**
+     * stops extending the lease without removing the claim, used when the action is abandoned
+     * so that the entry is not claimed again while the action may still be running
+     */
+    void abandon()
+    {
+        this.abandoned = true;
+        this.renewal.cancel(false);
+    }
+
+    /**
+     * stops extending the lease and removes the claim from the entry (if the claim is still held),
+     * an abandoned lease is instead left to expire
+     */
+    void release()
+    {
+        this.renewal.cancel(false);
+        if (this.abandoned) return;
+        Main.getDBDriver().getEventCollection().updateOne(
+                and(eq("_id", this.entryId), eq("claimed_by", INSTANCE_ID)),
+                combine(unset("claimed_by"), unset("claim_until")));
+    }
+
+    private static Date expiry()
+    {
+        return Date.from(Instant.now().plusSeconds(LEASE_SECONDS));
+    }
+
+    private static String hostname()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (Exception e)
+        {
+            return "saber";
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package ws.nmathe.saber.core.schedule;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.MongoException;
-import com.mongodb.client.MongoIterable;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.vdurmont.emoji.EmojiManager;
@@ -9,19 +9,31 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.utils.messages.MessageCreateData;
-import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.utils.Logging;
 import ws.nmathe.saber.utils.MessageUtilities;
-import java.security.SecureRandom;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.combine;
 import static com.mongodb.client.model.Updates.set;
 
 
@@ -33,14 +45,37 @@ import static com.mongodb.client.model.Updates.set;
  */
 public class EntryManager
 {
-    private Random generator;
-    public enum type { PROCESS, UPDATE1, UPDATE2, UPDATE3 }
-
-    /** construct EntryManager and seed random from OS random source */
-    public EntryManager()
-    {   // use system random to seed to avoid repeat seed values on bot restart
-        this.generator = new Random(new SecureRandom().nextLong());
-    }
+    private final IdAllocator ids = new IdAllocator();
+    private EntryScheduler scheduler;
+    private EntryScheduler refreshScheduler;
+    private EntryExecutor refreshExecutor;
+    private EntryExecutor executor;
+    private ActionWatchdog watchdog;
+    private final ExecutorService databaseExecutor = Executors.newFixedThreadPool(DATABASE_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("EntryDatabase-%d").setDaemon(true).build());
+    private final TrackedMessages trackedMessages = new TrackedMessages();
+    private final RsvpAccumulator rsvpAccumulator = new RsvpAccumulator();
+    private final AnnouncementCoalescer announcementCoalescer = new AnnouncementCoalescer();
+    public enum type { PROCESS, REFRESH, DAILY, EXPIRE }
+
+    // entries with actions due within this many minutes are held by the entry scheduler
+    static final int LOOK_AHEAD_MINUTES = 10;
+
+    // entries with display timers changing within this many minutes are held by the refresh scheduler
+    static final int REFRESH_HORIZON_MINUTES = 60;
+
+    // entry actions are asynchronous, the action threads only start them while up to
+    // ACTION_CONCURRENCY actions may be in progress, GUILD_QUEUE_CAPACITY may be queued for a single guild
+    private static final int ACTION_THREADS = 2;
+    private static final int ACTION_CONCURRENCY = 1000;
+    private static final int GUILD_QUEUE_CAPACITY = 50;
+
+    // number of threads running the blocking database steps of entry actions,
+    // as many as the action threads which ran entry actions (database steps included) before actions were asynchronous
+    private static final int DATABASE_THREADS = 10;
+
+    // number of display refreshes run at once
+    private static final int REFRESH_THREADS = 4;
 
     /**
      * creates the scheduledExecutor thread pool and starts schedule timers which
@@ -48,26 +83,61 @@ public class EntryManager
      */
     public void init()
     {
-        /* thread to process events */
+        /* populate the next action of entries which were created before the field existed */
+        Main.getDBDriver().getEntryCollection().find(eq("next_action_at", null))
+                .forEach((Consumer<? super ScheduleEntry>) se ->
+                {
+                    try
+                    {
+                        Main.getDBDriver().getEventCollection().updateOne(eq("_id", se.getId()), combine(
+                                set("next_action_at", Date.from(se.getNextActionTime())),
+                                set("next_action", se.getNextAction().name().toLowerCase())));
+                    }
+                    catch (Exception e)
+                    {
+                        Logging.exception(EntryManager.class, e);
+                    }
+                });
+
+        /* enforces time limits and retries upon entry actions */
+        this.watchdog = new ActionWatchdog();
+
+        /* executor which runs entry actions, one at a time per entry and in turn across guilds */
+        this.executor = new EntryExecutor("EntryExecutor", ACTION_THREADS, ACTION_CONCURRENCY, GUILD_QUEUE_CAPACITY);
+
+        /* scheduler which dispatches entry actions the moment they are due */
+        this.scheduler = new EntryScheduler("EntryScheduler", EntryProcessor::process);
+
+        /* thread to load the look-ahead window of due entries into the scheduler */
         ScheduledExecutorService announcementScheduler = Executors.newSingleThreadScheduledExecutor();
         announcementScheduler.scheduleWithFixedDelay(
                 new EntryProcessor(type.PROCESS),
-                15, 15, TimeUnit.SECONDS);
+                0, LOOK_AHEAD_MINUTES/2, TimeUnit.MINUTES);
 
-        // scheduler for threads to adjust entry display timers
+        /* scheduler which refreshes entry displays the moment their timers change */
+        this.refreshExecutor = new EntryExecutor("RefreshExecutor", REFRESH_THREADS, GUILD_QUEUE_CAPACITY);
+        this.refreshScheduler = new EntryScheduler("RefreshScheduler", EntryProcessor::refresh);
+
+        // scheduler for threads to adjust entry display timers and purge expired entries
         ScheduledExecutorService updateDisplayScheduler = Executors.newSingleThreadScheduledExecutor();
-        // updates events with times >24h
+        // loads timers changing within the refresh horizon
         updateDisplayScheduler.scheduleWithFixedDelay(
-                new EntryProcessor(type.UPDATE3),
-                12, 6, TimeUnit.HOURS);
-        // updates events with times >1 hour (but <24h)
+                new EntryProcessor(type.REFRESH),
+                0, REFRESH_HORIZON_MINUTES/2, TimeUnit.MINUTES);
+        // updates the day count of timers on events more than a day out, just after midnight
+        long midnight = ZonedDateTime.now().until(
+                ZonedDateTime.now().truncatedTo(ChronoUnit.DAYS).plusDays(1), ChronoUnit.SECONDS);
+        updateDisplayScheduler.scheduleAtFixedRate(
+                new EntryProcessor(type.DAILY),
+                midnight + 1, TimeUnit.DAYS.toSeconds(1), TimeUnit.SECONDS);
+        // purges expired events
         updateDisplayScheduler.scheduleWithFixedDelay(
-                new EntryProcessor(type.UPDATE2),
+                new EntryProcessor(type.EXPIRE),
                 30, 15, TimeUnit.MINUTES);
-        // update events with times <1 hour
-        //updateDisplayScheduler.scheduleWithFixedDelay(
-        //        new EntryProcessor(type.UPDATE1),
-        //        5, 3, TimeUnit.MINUTES);
+        // loads the set of entry messages, and reloads it daily to drop messages which are no longer entries
+        updateDisplayScheduler.scheduleWithFixedDelay(
+                this.trackedMessages::load,
+                0, 1, TimeUnit.DAYS);
     }
 
     /**
@@ -85,20 +155,6 @@ public class EntryManager
         se.reloadReminders(Main.getScheduleManager().getReminders(se.getChannelId()))
                 .reloadEndReminders(Main.getScheduleManager().getEndReminders(se.getChannelId()));
 
-        // process expiration date
-        Date expire = null;
-        if (se.getExpire() != null)
-        {
-            expire = Date.from(se.getExpire().toInstant());
-        }
-
-        // process deadline
-        Date deadline = null;
-        if (se.getDeadline() != null)
-        {
-            deadline = Date.from(se.getDeadline().toInstant());
-        }
-
         // is rsvp enabled on the channel set empty rsvp lists
         if (Main.getScheduleManager().isRSVPEnabled(se.getChannelId()) )
         {
@@ -114,8 +170,6 @@ public class EntryManager
 
         // send message to schedule
         TextChannel channel = jda.getTextChannelById(channelId);
-        Date finalExpire = expire;
-        Date finalDeadline = deadline;
         MessageUtilities.sendMsg(message, channel, msg ->
         {
             try
@@ -124,41 +178,15 @@ public class EntryManager
                 if (Main.getScheduleManager().isRSVPEnabled(channelId))
                 {
                     Map<String, String> map = Main.getScheduleManager().getRSVPOptions(channelId);
-                    addRSVPReactions(map, Main.getScheduleManager().getRSVPClear(channelId), msg, se);
+                    addRSVPReactions(map, Main.getScheduleManager().getRSVPClear(channelId), channel, msg.getId(), se);
                 }
 
                 // add new document
-                Document entryDocument =
-                        new Document("_id", se.getId())
-                                .append("title", se.getTitle())
-                                .append("start", Date.from(se.getStart().toInstant()))
-                                .append("end", Date.from(se.getEnd().toInstant()))
-                                .append("comments", se.getComments())
-                                .append("recurrence", se.getRepeat())
-                                .append("reminders", se.getReminders())
-                                .append("end_reminders", se.getEndReminders())
-                                .append("url", se.getTitleUrl())
-                                .append("hasStarted", se.hasStarted())
-                                .append("messageId", msg.getId())
-                                .append("channelId", se.getChannelId())
-                                .append("googleId", se.getGoogleId())
-                                .append("rsvp_members", se.getRsvpMembers())
-                                .append("rsvp_limits", se.getRsvpLimits())
-                                .append("image", se.getImageUrl())
-                                .append("thumbnail", se.getThumbnailUrl())
-                                .append("orig_start", Date.from(se.getRecurrence().getOriginalStart().toInstant()))
-                                .append("count", se.getRecurrence().getCount())
-                                .append("start_disabled", false)
-                                .append("end_disabled", false)
-                                .append("reminders_disabled", false)
-                                .append("expire", finalExpire)
-                                .append("deadline", finalDeadline)
-                                .append("guildId", se.getGuildId())
-                                .append("location", se.getLocation())
-                                .append("description", se.getDescription())
-                                .append("color", se.getColor());
-
-                Main.getDBDriver().getEventCollection().insertOne(entryDocument);
+                se.setMessageObject(msg)
+                        .setRenderHash(MessageGenerator.fingerprint(msg.getId(), message.getEmbeds(), message.getContent()));
+                Main.getDBDriver().getEntryCollection().insertOne(se);
+                this.trackedMessages.track(msg.getId());
+                this.schedule(se);
 
                 // auto-sort the schedule if configured
                 autoSort(sort, channelId);
@@ -181,69 +209,25 @@ public class EntryManager
      */
     public boolean updateEntry(ScheduleEntry se, boolean sort)
     {
-        // process expiration date
-        Date expire = null;
-        if (se.getExpire() != null)
-        {
-            expire = Date.from(se.getExpire().toInstant());
-        }
-
-        // process deadline
-        Date deadline = null;
-        if (se.getDeadline() != null)
-        {
-            deadline = Date.from(se.getDeadline().toInstant());
-        }
-
-        // update message display
-        Date finalExpire = expire;
-        Date finalDeadline = deadline;
-
         try
         {
-            // replace whole document
-            Document entryDocument =
-                    new Document("_id", se.getId())
-                            .append("title", se.getTitle())
-                            .append("start", Date.from(se.getStart().toInstant()))
-                            .append("end", Date.from(se.getEnd().toInstant()))
-                            .append("comments", se.getComments())
-                            .append("recurrence", se.getRepeat())
-                            .append("reminders", se.getReminders())
-                            .append("end_reminders", se.getEndReminders())
-                            .append("url", se.getTitleUrl())
-                            .append("hasStarted", se.hasStarted())
-                            .append("messageId", se.getMessageId())
-                            .append("channelId", se.getChannelId())
-                            .append("googleId", se.getGoogleId())
-                            .append("rsvp_members", se.getRsvpMembers())
-                            .append("rsvp_limits", se.getRsvpLimits())
-                            .append("start_disabled", se.isQuietStart())
-                            .append("end_disabled", se.isQuietEnd())
-                            .append("reminders_disabled", se.isQuietRemind())
-                            .append("expire", finalExpire)
-                            .append("orig_start", Date.from(se.getRecurrence().getOriginalStart().toInstant()))
-                            .append("count", se.getRecurrence().getCount())
-                            .append("image", se.getImageUrl())
-                            .append("thumbnail", se.getThumbnailUrl())
-                            .append("deadline", finalDeadline)
-                            .append("guildId", se.getGuildId())
-                            .append("announcements", new ArrayList<>(se.getAnnouncements()))
-                            .append("announcement_dates", se.getAnnouncementDates())
-                            .append("announcement_times", se.getAnnouncementTimes())
-                            .append("announcement_messages", se.getAnnouncementMessages())
-                            .append("announcement_targets", se.getAnnouncementTargets())
-                            .append("location", se.getLocation())
-                            .append("description", se.getDescription())
-                            .append("color", se.getColor());
-
-            UpdateResult res = Main.getDBDriver().getEventCollection()
-                    .replaceOne(eq("_id", se.getId()), entryDocument);
-            if (!res.wasAcknowledged())
+            // set only the fields which changed since the entry was read, so that fields
+            // not managed here (ie. leases) are preserved and unchanged lists are not rewritten
+            BsonDocument fields = ScheduleEntryCodec.toBsonDocument(se);
+            fields.remove("_id");
+            Document update = changes(se.getPersisted(), fields);
+            if (!update.isEmpty())
             {
-                Logging.warn(this.getClass(), "Attempt to update '"+se.getTitle()+"' was unacknowledged!");
-                return false; // return false, might result in skipped announcement or other issues
+                UpdateResult res = Main.getDBDriver().getEventCollection()
+                        .updateOne(eq("_id", se.getId()), update);
+                if (!res.wasAcknowledged())
+                {
+                    Logging.warn(this.getClass(), "Attempt to update '"+se.getTitle()+"' was unacknowledged!");
+                    return false; // return false, might result in skipped announcement or other issues
+                }
+                se.setPersisted(fields);
             }
+            this.schedule(se);
 
             // update the event message with the information changes (if any)
             // this may (is) over-aggressive, however it is convenient and easier to manage
@@ -262,6 +246,68 @@ public class EntryManager
         }
     }
 
+    /**
+     * creates the update which brings a stored entry document up to date with the entry's fields,
+     * null fields are removed from the document
+     * @param persisted the document as stored, or null if unknown (all fields are written)
+     * @param fields the entry's current fields
+     * @return $set/$unset update document, empty if no field changed
+     */
+    private static Document changes(BsonDocument persisted, BsonDocument fields)
+    {
+        Document set = new Document();
+        Document unset = new Document();
+        diff("", persisted, fields, set, unset);
+
+        Document update = new Document();
+        if (!set.isEmpty()) update.append("$set", set);
+        if (!unset.isEmpty()) update.append("$unset", unset);
+        return update;
+    }
+
+    /**
+     * helper to changes(), compares the fields of the document (or of an embedded document at the path prefix),
+     * embedded documents such as the rsvp members and announcement overrides are compared field by field,
+     * so that an rsvp to one group sets only that group's list rather than every group's
+     */
+    private static void diff(String prefix, BsonDocument persisted, BsonDocument fields, Document set, Document unset)
+    {
+        fields.forEach((key, value) ->
+        {
+            String path = prefix + key;
+            BsonValue stored = persisted == null ? null : persisted.get(key);
+            if (value.isNull())
+            {
+                if (persisted == null || (stored != null && !stored.isNull())) unset.append(path, "");
+            }
+            else if (value.isDocument() && stored != null && stored.isDocument()
+                    && isPathSafe(value.asDocument()) && isPathSafe(stored.asDocument()))
+            {
+                diff(path + ".", stored.asDocument(), value.asDocument(), set, unset);
+            }
+            else if (!value.equals(stored))
+            {
+                set.append(path, value);
+            }
+        });
+
+        if (persisted != null && !prefix.isEmpty())
+        {   // fields removed from an embedded document
+            persisted.keySet().stream()
+                    .filter(key -> !fields.containsKey(key))
+                    .forEach(key -> unset.append(prefix + key, ""));
+        }
+    }
+
+    /**
+     * @return true if every key of the document can be addressed as part of a dotted path
+     */
+    private static boolean isPathSafe(BsonDocument document)
+    {
+        return document.keySet().stream()
+                .noneMatch(key -> key.isEmpty() || key.contains(".") || key.startsWith("$"));
+    }
+
     /**
      * update the event's database entry's hasStarted flag to true
      * @param se schedule entry which has started
@@ -273,12 +319,16 @@ public class EntryManager
         {
             UpdateResult res = Main.getDBDriver().getEventCollection()
                     // using the 'update many' call seems to work more effectively
-                    .updateMany(eq("_id", se.getId()), set("hasStarted", true));
+                    .updateMany(eq("_id", se.getId()), combine(
+                            set("hasStarted", true),
+                            set("next_action_at", Date.from(se.getNextActionTime())),
+                            set("next_action", se.getNextAction().name().toLowerCase())));
             if (!res.wasAcknowledged())
             {
                 Logging.warn(this.getClass(), "Attempt to update '"+se.getTitle()+"' was unacknowledged!");
                 return false; // might result in skipped announcements or other issues
             }
+            this.schedule(se);
             se.reloadDisplay();
             return true;
         }
@@ -290,37 +340,39 @@ public class EntryManager
     }
 
     /**
-     * adds rsvp reactions to a message
+     * adds rsvp reactions to a message, the message is reacted to by ID and is not retrieved
      * @param options (Map) mapping of rsvp emojis to rsvp names
      * @param clearEmoji unicode emoji to use for the clear action (empty if clear is disabled)
-     * @param message (Message) discord message object
+     * @param channel the channel the message was sent to
+     * @param messageId ID of the message to react to
      * @param se the schedule entry object
      */
     public static void addRSVPReactions
-    (Map<String, String> options, String clearEmoji, Message message, ScheduleEntry se)
+    (Map<String, String> options, String clearEmoji, MessageChannel channel, String messageId, ScheduleEntry se)
     {   // add all RSVP emoji's
         for(String emoji : options.keySet())
         {   // don't add the reaction for categories with 0 limit
             if (se.getRsvpLimit(options.get(emoji)) != 0)
-                addRSVPReaction(emoji, message);
+                addRSVPReaction(emoji, channel, messageId);
         }
         // add clear emoji if configured
         if(!clearEmoji.isEmpty())
         {
-            addRSVPReaction(clearEmoji, message);
+            addRSVPReaction(clearEmoji, channel, messageId);
         }
     }
 
     /**
      * helper to addRSVPReactions(..)
      * @param emoji string emoticon, or emote ID
-     * @param message message object to react to
+     * @param channel the channel the message was sent to
+     * @param messageId ID of the message to react to
      */
-    private static void addRSVPReaction(String emoji, Message message)
+    private static void addRSVPReaction(String emoji, MessageChannel channel, String messageId)
     {
         if (EmojiManager.isEmoji(emoji))
         {
-            message.addReaction(Emoji.fromUnicode(emoji)).queue();
+            MessageUtilities.addReactionById(channel, messageId, Emoji.fromUnicode(emoji));
         }
         else
         {
@@ -330,7 +382,7 @@ public class EntryManager
                 emote = shard.getEmojiById(emoji);
                 if(emote != null)
                 {
-                    message.addReaction(emote).queue();
+                    MessageUtilities.addReactionById(channel, messageId, emote);
                     break;
                 }
             }
@@ -362,15 +414,202 @@ public class EntryManager
     /**
      * removes an entry by id from the db
      * @param entryId (Integer) ID of event entry
+     * @param messageId (String) ID of the entry's message, no longer tracked once the entry is removed (may be null)
      * @return true if the remove was acknowledged (safe), otherwise false
      */
-    public boolean removeEntry(Integer entryId)
+    public boolean removeEntry(Integer entryId, String messageId)
     {
+        this.forgetEntry(entryId, messageId);
         DeleteResult res = Main.getDBDriver().getEventCollection()
                 .deleteMany(eq("_id", entryId));
         return res.wasAcknowledged();
     }
 
+    /**
+     * skips the current occurrence of an entry (the entry is repeated, or removed if it does not repeat),
+     * the skip is run by the entry executor under a lease on the entry, as the entry's due actions are,
+     * so that it is never run concurrently with one of the entry's actions
+     * @param entryId (Integer) ID of the entry
+     * @param guildId (String) ID of the guild the entry belongs to
+     * @return future completed with the skipped entry, or completed exceptionally if the entry could not be skipped
+     */
+    public CompletableFuture<ScheduleEntry> skipEntry(Integer entryId, String guildId)
+    {
+        CompletableFuture<ScheduleEntry> skipped = new CompletableFuture<>();
+        boolean queued = this.executor.submitAsync(guildId, entryId, () ->
+                CompletableFuture.supplyAsync(() -> EntryLease.claim(entryId), this.databaseExecutor)
+                        .thenCompose(lease ->
+                        {
+                            if (lease == null)
+                            {
+                                throw new CompletionException(
+                                        new IllegalStateException("the event is busy or no longer exists"));
+                            }
+                            // the lease is released however the skip ends
+                            ScheduleEntry se = lease.getEntry();
+                            return se.repeat()
+                                    .thenApply(v -> se)
+                                    .whenCompleteAsync((result, e) -> lease.release(), this.databaseExecutor);
+                        })
+                        .handle((se, e) ->
+                        {
+                            if (e == null) skipped.complete(se);
+                            else skipped.completeExceptionally(ActionWatchdog.unwrap(e));
+                            return null;
+                        }), false);
+
+        if (!queued)
+        {
+            skipped.completeExceptionally(new IllegalStateException("the event is busy"));
+        }
+        return skipped;
+    }
+
+    /**
+     * removes every entry matching a filter (such as the entries of a deleted schedule),
+     * the deadlines of the removed entries are cancelled and their messages are no longer tracked
+     * @param filter (Bson) query matching the entries to remove
+     * @return IDs of the messages which displayed the removed entries
+     */
+    public List<String> removeEntries(Bson filter)
+    {
+        Map<Integer, String> entries = new HashMap<>();
+        Main.getDBDriver().getEventCollection().find(filter)
+                .projection(fields(include("_id", "messageId")))
+                .forEach((Consumer<? super Document>) document ->
+                        entries.put(document.getInteger("_id"), document.getString("messageId")));
+        if (entries.isEmpty()) return Collections.emptyList();
+
+        Main.getDBDriver().getEventCollection().deleteMany(in("_id", entries.keySet()));
+        entries.forEach(this::forgetEntry);
+
+        List<String> messageIds = new ArrayList<>(entries.values());
+        messageIds.removeIf(Objects::isNull);
+        return messageIds;
+    }
+
+    /**
+     * cancels the deadlines of a removed entry and stops tracking its message
+     */
+    private void forgetEntry(Integer entryId, String messageId)
+    {
+        if (this.scheduler != null) this.scheduler.cancel(entryId);
+        if (this.refreshScheduler != null) this.refreshScheduler.cancel(entryId);
+        if (this.watchdog != null) this.watchdog.forget(entryId);
+        if (messageId != null) this.trackedMessages.untrack(messageId);
+    }
+
+    /**
+     * removes an entry whose display message no longer exists,
+     * the entry is only removed if it is still displayed by that message (it may have been given a new message since)
+     * @param entryId ID of the entry
+     * @param messageId ID of the message found not to exist
+     */
+    void removeOrphanedEntry(Integer entryId, String messageId)
+    {
+        try
+        {
+            DeleteResult res = Main.getDBDriver().getEventCollection()
+                    .deleteOne(and(eq("_id", entryId), eq("messageId", messageId)));
+            if (res.getDeletedCount() == 0) return;
+
+            this.forgetEntry(entryId, messageId);
+            Logging.info(this.getClass(), "Removed entry [" + entryId + "] whose message no longer exists.");
+        }
+        catch (MongoException e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+    }
+
+    /**
+     * (re)schedules an entry's next action with the entry scheduler, and its next timer change with the refresh scheduler
+     * @param se the schedule entry, as it has been written to the database
+     */
+    private void schedule(ScheduleEntry se)
+    {
+        if (this.scheduler != null)
+        {
+            this.scheduler.schedule(se.getId(), se.getGuildId(), se.getNextActionTime());
+        }
+        if (this.refreshScheduler != null)
+        {
+            this.refreshScheduler.schedule(se.getId(), se.getGuildId(), MessageGenerator.nextTimerChange(se));
+        }
+    }
+
+    /**
+     * @return the set of messages which display entries
+     */
+    public TrackedMessages getTrackedMessages()
+    {
+        return this.trackedMessages;
+    }
+
+    /**
+     * @return the accumulator which coalesces rsvp reactions
+     */
+    public RsvpAccumulator getRsvpAccumulator()
+    {
+        return this.rsvpAccumulator;
+    }
+
+    /**
+     * @return the coalescer which combines same-time announcements for schedules which opt in
+     */
+    AnnouncementCoalescer getAnnouncementCoalescer()
+    {
+        return this.announcementCoalescer;
+    }
+
+    /**
+     * @return the scheduler responsible for dispatching entry actions
+     */
+    EntryScheduler getScheduler()
+    {
+        return this.scheduler;
+    }
+
+    /**
+     * @return the scheduler responsible for refreshing entry displays
+     */
+    EntryScheduler getRefreshScheduler()
+    {
+        return this.refreshScheduler;
+    }
+
+    /**
+     * @return the executor which runs entry display refreshes
+     */
+    EntryExecutor getRefreshExecutor()
+    {
+        return this.refreshExecutor;
+    }
+
+    /**
+     * @return the executor which runs entry actions
+     */
+    public EntryExecutor getExecutor()
+    {
+        return this.executor;
+    }
+
+    /**
+     * @return the executor which runs the database steps of entry actions
+     */
+    Executor getDatabaseExecutor()
+    {
+        return this.databaseExecutor;
+    }
+
+    /**
+     * @return the watchdog which supervises entry actions
+     */
+    public ActionWatchdog getWatchdog()
+    {
+        return this.watchdog;
+    }
+
     /**
      * regenerates the displayed Message text for a schedule entry
      * @param eId integer Id
@@ -383,24 +622,12 @@ public class EntryManager
     }
 
     /**
-     * generates a new ID randomly from a 32bit space
+     * allocates a new ID from the block reserved by this instance
      * @return (Integer) new, unused id
      */
     private Integer newId()
     {
-        // try first to use the requested Id
-        Integer ID;
-        ID = this.generator.nextInt(Integer.MAX_VALUE);
-
-        // if the Id is in use, generate a new one until a free one is found
-        Bson document = Main.getDBDriver().getEventCollection().find(eq("_id", ID)).first();
-        while (document != null)
-        {
-            ID = this.generator.nextInt();
-            document = Main.getDBDriver().getEventCollection().find(eq("_id", ID)).first();
-        }
-
-        return ID;
+        return this.ids.next();
     }
 
     /**
@@ -410,16 +637,8 @@ public class EntryManager
      */
     public ScheduleEntry getEntry(Integer entryId)
     {
-        Document entryDocument = Main.getDBDriver().getEventCollection()
+        return Main.getDBDriver().getEntryCollection()
                 .find(eq("_id", entryId)).first();
-        if (entryDocument != null)
-        {
-            return new ScheduleEntry(entryDocument);
-        }
-        else    // otherwise return null
-        {
-            return null;
-        }
     }
 
     /**
@@ -430,40 +649,54 @@ public class EntryManager
      */
     public ScheduleEntry getEntryFromGuild(Integer entryId, String guildId)
     {
-        Document entryDocument = Main.getDBDriver().getEventCollection()
+        return Main.getDBDriver().getEntryCollection()
                 .find(and(eq("_id", entryId), eq("guildId",guildId))).first();
-        if (entryDocument != null)
-        {
-            return new ScheduleEntry(entryDocument);
-        }
-        else    // otherwise return null
-        {
-            return null;
-        }
     }
 
     /**
-     * Retrieves all entries associated with a guild
+     * Retrieves all entries associated with a guild,
+     * entries are read from the database as they are iterated
      * @param guildId snowflake ID of guild
      * @return all active entries
      */
-    public Collection<ScheduleEntry> getEntriesFromGuild(String guildId)
+    public Iterable<ScheduleEntry> getEntriesFromGuild(String guildId)
     {
-        MongoIterable<ScheduleEntry> entries = Main.getDBDriver().getEventCollection()
-                .find(eq("guildId", guildId)).map(ScheduleEntry::new);
-        return entries.into(new ArrayList<>());
+        return Main.getDBDriver().getEntryCollection().find(eq("guildId", guildId));
     }
 
     /**
-     * Retrieves all entries on a channel
+     * Retrieves all entries on a channel,
+     * entries are read from the database as they are iterated
      * @param channelId snowflake ID of channel
      * @return all active entries
      */
-    public Collection<ScheduleEntry> getEntriesFromChannel(String channelId)
+    public Iterable<ScheduleEntry> getEntriesFromChannel(String channelId)
+    {
+        return Main.getDBDriver().getEntryCollection().find(eq("channelId", channelId));
+    }
+
+    /**
+     * Retrieves summaries of the entries on a channel, for callers which need only list or sort the entries,
+     * summaries are read from the database as they are iterated
+     * @param channelId snowflake ID of channel
+     * @return summaries of all active entries, in order of start time
+     */
+    public Iterable<EntrySummary> getSummariesFromChannel(String channelId)
+    {
+        return Main.getDBDriver().getEventCollection()
+                .find(eq("channelId", channelId))
+                .projection(EntrySummary.PROJECTION)
+                .sort(ascending("start"))
+                .map(EntrySummary::new);
+    }
+
+    /**
+     * @param channelId snowflake ID of channel
+     * @return number of entries on the channel
+     */
+    public long countEntriesOnChannel(String channelId)
     {
-        MongoIterable<ScheduleEntry> entries = Main.getDBDriver().getEventCollection()
-                .find(eq("channelId", channelId)).map(ScheduleEntry::new);
-        return entries.into(new ArrayList<>());
+        return Main.getDBDriver().getEventCollection().countDocuments(eq("channelId", channelId));
     }
 
     /**
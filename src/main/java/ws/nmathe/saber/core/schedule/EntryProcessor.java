@@ -1,46 +1,40 @@
 package ws.nmathe.saber.core.schedule;
 
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import ws.nmathe.saber.Main;
+import ws.nmathe.saber.core.schedule.ScheduleEntry.ActionType;
 import ws.nmathe.saber.utils.Logging;
-import ws.nmathe.saber.utils.MessageUtilities;
 
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.Collections;
-import java.util.Date;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
 
 import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
 
 /**
- * Used by the Main scheduler timer, a new thread is executed every minute/5minutes/1hour/1day.
- * processes all entries referenced in the collection passed in, checking the start/end time and updating the
- * "time until" display timers.
- * a thread is spawned for each event operation to avoid one problematic event hanging-up the class
+ * Used by the Main scheduler timer, a new thread is executed every 5minutes/15minutes/30minutes/day.
+ * loads entries with actions due within the look-ahead window into the entry scheduler, loads entries with
+ * "time until" display timers changing within the refresh horizon into the refresh scheduler, and purges expired entries.
+ * The entry scheduler calls process() when an entry's action is due,
+ * the action is then run by the entry executor to avoid one problematic event hanging-up the class.
+ * The refresh scheduler calls refresh() when an entry's display timers change
  */
 class EntryProcessor implements Runnable
 {
-    // thread pool used to reload displays of events
-    private static ExecutorService timerExecutor = Executors.newCachedThreadPool();
-
-    // thread pool used to process event announcements
-    private static ExecutorService setExecutor = Executors.newFixedThreadPool(10);
-
-    private enum ActionType {END, START, REMIND, SPECIAL}
     private EntryManager.type type;
 
-    // simple mechanism to avoid conflicting database updates
-    // (ie. simultaneous remind() and announce() update)
-    private static Set<Integer> processing = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private static Map<Integer, Date> timestamps = new ConcurrentHashMap<>();
+    // seconds to wait before retrying an entry which could not be queued
+    private static final int RETRY_SECONDS = 15;
 
     /** construct the entry processor with type */
     EntryProcessor(EntryManager.type type)
@@ -58,158 +52,137 @@ class EntryProcessor implements Runnable
              */
             if(type == EntryManager.type.PROCESS)
             {
-                Logging.info(this.getClass(), "Processing entries. . .");
-                Bson query;
-
-                /*
-                 * process any event-specific announcements
-                 */
-                query = lte("announcements", new Date());
-                processEvents(ActionType.SPECIAL, query);
-
-                /*
-                 * process events to end
-                 */
-                query = and(eq("hasStarted",true), lte("end", new Date()));
-                processEvents(ActionType.END, query);
-
-                /*
-                 * process events to start
-                 */
-                query = and(eq("hasStarted",false), lte("start", new Date()));
-                processEvents(ActionType.START, query);
-
-                /*
-                 * process events with reminders
-                 */
-                query = and(
-                            and(eq("hasStarted",false), lte("reminders", new Date())),
-                            gte("start", new Date()));
-                query = or(query,
-                            and(
-                                and(eq("hasStarted",true), lte("end_reminders", new Date())),
-                                gte("end", new Date())));
-                processEvents(ActionType.REMIND, query);
-
-                Logging.info(this.getClass(), "Currently processing "+processing.size()+" events.");
-
-                // exit the bot if any event takes more than a few minutes to process
-                int timeThreshold  = 3;
-                int countThreshold = 30;
-                int count = 0;
-                for (Date value : timestamps.values())
-                {
-                    boolean flagged = value.before(Date.from(Instant.now().minus(timeThreshold, ChronoUnit.MINUTES)));
-                    if (flagged) count += 1;
-                }
-                if (count > countThreshold)
-                {
-                    String txt = "[EXIT] There are "+count+" events that have been in processing for over "+timeThreshold+".";
-                    Logging.warn(this.getClass(), txt);
-                    System.exit(-100);
-                }
+                Logging.info(this.getClass(), "Loading entries due within the look-ahead window. . .");
+
+                // advance the scheduler's horizon before loading so that
+                // entries updated during the load are not dropped
+                Instant horizon = Instant.now().plus(EntryManager.LOOK_AHEAD_MINUTES, ChronoUnit.MINUTES);
+                Main.getEntryManager().getScheduler().setHorizon(horizon);
+
+                // a single range scan over the denormalized next action field
+                Bson query = and(Main.getDBDriver().onLocalShards(), lte("next_action_at", Date.from(horizon)));
+
+                Main.getDBDriver().getEntryCollection().find(query)
+                        .forEach((Consumer<? super ScheduleEntry>) se ->
+                        {
+                            // identify which shard is responsible for the schedule
+                            JDA jda = Main.getShardManager().getJDA(se.getGuildId());
+
+                            // if the shard is not connected, do process the event
+                            if(jda == null) return;
+                            if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return;
+
+                            Instant when = Main.getEntryManager().getWatchdog().adjust(se.getId(), se.getNextActionTime());
+                            Main.getEntryManager().getScheduler().schedule(se.getId(), se.getGuildId(), when);
+                        });
+
+                EntryExecutor executor = Main.getEntryManager().getExecutor();
+                Logging.info(this.getClass(), "Currently processing "+executor.getRunning()+" events, "+
+                        executor.getQueued()+" queued, "+Main.getEntryManager().getScheduler().size()+" scheduled.");
             }
 
             /*
-             * Updates the 'starts in x minutes' timer on events
+             * Loads entries whose display timers change within the refresh horizon into the refresh scheduler
              */
-            else
+            else if(type == EntryManager.type.REFRESH)
             {
-                // dummy document query will filter all events
-                // should an invalid level ever be passed in, all entries will be reloaded!
-                Bson query = new Document();
-
-                Logging.info(this.getClass(), "Processing entries: updating timers. . .");
-                if(type == EntryManager.type.UPDATE1)
-                {   // adjust timers for entries starting/ending within the next hour
-                    query = or(
-                            and(
-                                    eq("hasStarted",false),
-                                    and(
-                                            lte("start", Date.from(ZonedDateTime.now().plusHours(1).toInstant())),
-                                            gte("start", Date.from(ZonedDateTime.now().plusMinutes(4).toInstant()))
-                                    )
-                            ),
-                            and(
-                                    eq("hasStarted", true),
-                                    and(
-                                            lte("end", Date.from(ZonedDateTime.now().plusHours(1).toInstant())),
-                                            gte("end", Date.from(ZonedDateTime.now().plusMinutes(4).toInstant()))
-                                    )
-                            )
-                    );
+                Logging.info(this.getClass(), "Loading entries with timers changing within the refresh horizon. . .");
 
-                }
-                if(type == EntryManager.type.UPDATE2)
-                {   // purge expiring events
-                    query = lte("expire", Date.from(ZonedDateTime.now().plusDays(1).toInstant()));
+                Instant horizon = Instant.now().plus(EntryManager.REFRESH_HORIZON_MINUTES, ChronoUnit.MINUTES);
+                Main.getEntryManager().getRefreshScheduler().setHorizon(horizon);
 
-                    //delete message objects
-                    Main.getDBDriver().getEventCollection().find(query)
-                            .forEach((Consumer<? super Document>) document ->
-                    {
-                        MessageUtilities.deleteMsg((new ScheduleEntry(document)).getMessageObject(), null);
-                    });
+                // timers count down to the entry's actions, and display hours and minutes only within a day of them
+                // beyond that timers only change at midnight, which is handled by the daily refresh
+                Bson query = and(Main.getDBDriver().onLocalShards(),
+                        lte("next_action_at", Date.from(horizon.plus(1, ChronoUnit.DAYS))));
 
-                    // bulk delete entries from the database
-                    Main.getDBDriver().getEventCollection().deleteMany(query);
-
-                    // adjust timers
-                    query = or(and(
-                            eq("hasStarted",false),
-                            and(
-                                    lte("start", Date.from(ZonedDateTime.now().plusDays(1).toInstant())),
-                                    gte("start", Date.from(ZonedDateTime.now().plusHours(1).toInstant()))
-                            )),
-                            and(
-                                    eq("hasStarted", true),
-                                    and(
-                                            lte("end", Date.from(ZonedDateTime.now().plusDays(1).toInstant())),
-                                            gte("end", Date.from(ZonedDateTime.now().plusHours(1).toInstant()))
-                                    )));
+                Main.getDBDriver().getEntryCollection().find(query)
+                        .forEach((Consumer<? super ScheduleEntry>) se ->
+                        {
+                            // identify which shard is responsible for the schedule
+                            JDA jda = Main.getShardManager().getJDA(se.getGuildId());
 
-                }
-                if(type == EntryManager.type.UPDATE3)
-                {   // adjust timers for entries that aren't starting/ending within the next day
-                    query = or(
-                            and(
-                                    eq("hasStarted", false),
-                                    gte("start", Date.from(ZonedDateTime.now().plusDays(1).toInstant()))),
-                            and(
-                                    eq("hasStarted", true),
-                                    gte("end", Date.from(ZonedDateTime.now().plusDays(1).toInstant()))));
+                            // if the shard is not connected, do process the event
+                            if (jda == null) return;
+                            if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return;
 
-                }
+                            Main.getEntryManager().getRefreshScheduler()
+                                    .schedule(se.getId(), se.getGuildId(), MessageGenerator.nextTimerChange(se));
+                        });
+
+                Logging.info(this.getClass(), Main.getEntryManager().getRefreshScheduler().size()+" timer refreshes scheduled.");
+            }
+
+            /*
+             * Updates the day count of timers on entries with no action within the next day
+             */
+            else if(type == EntryManager.type.DAILY)
+            {
+                Logging.info(this.getClass(), "Refreshing day-level timers. . .");
+
+                Bson query = and(Main.getDBDriver().onLocalShards(),
+                        gt("next_action_at", Date.from(Instant.now().plus(1, ChronoUnit.DAYS))));
 
-                // reload entries based on the appropriate query
                 Main.getDBDriver().getEventCollection().find(query)
+                        .projection(fields(include("_id", "guildId")))
+                        .forEach((Consumer<? super Document>) document ->
+                                refresh(document.getInteger("_id"), document.getString("guildId")));
+
+                Logging.info(this.getClass(), "Finished refreshing day-level timers. . .");
+            }
+
+            /*
+             * Removes expired entries
+             */
+            else if(type == EntryManager.type.EXPIRE)
+            {
+                Bson query = and(Main.getDBDriver().onLocalShards(),
+                        lte("expire", Date.from(ZonedDateTime.now().plusDays(1).toInstant())));
+
+                // collect the IDs of the expired entries and their messages, grouped by channel
+                List<Integer> entryIds = new ArrayList<>();
+                Map<String, List<String>> messageIds = new HashMap<>();
+                Map<String, String> guildIds = new HashMap<>();
+                Main.getDBDriver().getEventCollection().find(query)
+                        .projection(fields(include("_id", "guildId", "channelId", "messageId")))
                         .forEach((Consumer<? super Document>) document ->
                         {
-                            // identify which shard is responsible for the schedule
-                            String guildId = document.getString("guildId");
-                            JDA jda = Main.getShardManager().getJDA(guildId);
+                            entryIds.add(document.getInteger("_id"));
 
-                            // if the shard is not connected, do process the event
-                            if (jda == null) return;
-                            if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return;
+                            String channelId = document.getString("channelId");
+                            String messageId = document.getString("messageId");
+                            if (channelId == null || messageId == null) return;
+                            messageIds.computeIfAbsent(channelId, k -> new ArrayList<>()).add(messageId);
+                            guildIds.put(channelId, document.getString("guildId"));
+                        });
+                if (entryIds.isEmpty()) return;
+
+                // delete the messages by ID (bulk deleted where possible) without retrieving them
+                messageIds.forEach((channelId, ids) ->
+                {
+                    JDA jda = Main.getShardManager().getJDA(guildIds.get(channelId));
+                    if (jda == null) return;
+                    TextChannel channel = jda.getTextChannelById(channelId);
+                    if (channel == null) return;
 
-                            timerExecutor.execute(() ->
+                    try
+                    {
+                        channel.purgeMessagesById(ids).forEach(future -> future.exceptionally(e ->
+                        {
+                            if (!(e instanceof PermissionException) && !(e instanceof ErrorResponseException))
                             {
-                                try
-                                {   // convert to scheduleEntry object and update display
-                                    (new ScheduleEntry(document)).reloadDisplay();
-                                }
-                                catch (PermissionException ignored)
-                                {/* dont care */}
-                                catch(Exception e)
-                                {
-                                    Logging.warn(this.getClass(), "Error occurred while updating event timer.");
-                                    Logging.exception(this.getClass(), e);
-                                }
-                            });
-                        });
+                                Logging.exception(EntryProcessor.class, e);
+                            }
+                            return null;
+                        }));
+                    }
+                    catch (PermissionException ignored)
+                    {/* dont care */}
+                });
 
-                Logging.info(this.getClass(), "Finished updating timers. . .");
+                // bulk delete entries from the database
+                Main.getEntryManager().removeEntries(in("_id", entryIds));
+                Logging.info(this.getClass(), "Purged "+entryIds.size()+" expired entries from "+messageIds.size()+" channels.");
             }
         }
         catch(Exception e)
@@ -219,65 +192,150 @@ class EntryProcessor implements Runnable
     }
 
     /**
-     * fills a ActionType given a proper query, helper function to run()
-     * @param action which ActionType to ActionType the event for
-     * @param query the database query to use
+     * processes the due action of an entry, invoked by the entry scheduler when the entry's deadline is due
+     * the entry is read from the database when the action runs, so that it is never processed with stale data,
+     * and is leased for the duration of the action so that no other instance of the bot processes it at the same time,
+     * the action itself is run under the watchdog's time limit and retry policy
+     * the action is a pipeline of asynchronous steps (claim, persist, queue the announcements, release),
+     * the database steps run on the entry manager's database executor and no step holds a thread while waiting on discord,
+     * the entry's message is edited and deleted by ID, it is only retrieved to check that it still exists
+     * before the entry is started, ended, or repeated
+     * @param entryId ID of the entry to process
+     * @param guildId ID of the guild the entry belongs to
      */
-    private void processEvents(ActionType action, Bson query)
+    static void process(Integer entryId, String guildId)
     {
-        Main.getDBDriver().getEventCollection().find(query)
-                .forEach((Consumer<? super Document>) document ->
-                {
-                    // identify which shard is responsible for the schedule
-                    String guildId = document.getString("guildId");
-                    JDA jda = Main.getShardManager().getJDA(guildId);
+        boolean queued = Main.getEntryManager().getExecutor().submitAsync(guildId, entryId, () ->
+        {
+            // identify which shard is responsible for the schedule
+            JDA jda = Main.getShardManager().getJDA(guildId);
 
-                    // if the shard is not connected, do process the event
-                    if(jda == null) return;
-                    if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return;
+            // if the shard is not connected, do process the event
+            if (jda == null) return CompletableFuture.completedFuture(null);
+            if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return CompletableFuture.completedFuture(null);
 
-                    ScheduleEntry se = (new ScheduleEntry(document));
-                    Integer id = se.getId();
-                    if (processing.add(id))
+            Executor database = Main.getEntryManager().getDatabaseExecutor();
+            return CompletableFuture.supplyAsync(() -> EntryLease.claim(entryId), database)
+                    .thenCompose(lease ->
                     {
-                        timestamps.put(id, new Date());
-                        setExecutor.submit(() ->
-                        {
-                            try
-                            {
-                                switch(action)
-                                {
-                                    case END:
-                                        se.end();
-                                        break;
-                                    case START:
-                                        se.start();
-                                        break;
-                                    case REMIND:
-                                        se.remind();
-                                        break;
-                                    case SPECIAL:
-                                        se.announce();
-                                        break;
-                                }
-                            }
-                            catch (PermissionException e)
-                            {
-                                Logging.warn(this.getClass(),
-                                        "Permission error on '"+se.getTitle()+"' ["+se.getId()+"]: "+e.getMessage());
-                            }
-                            catch (Exception e)
+                        if (lease == null)
+                        {   // claimed by another instance, check back once it is likely to have finished
+                            if (Main.getEntryManager().getEntry(entryId) != null)
                             {
-                                Logging.warn(this.getClass(), "Error occurred when processing event action!");
-                                Logging.exception(this.getClass(), e);
+                                Main.getEntryManager().getScheduler()
+                                        .schedule(entryId, guildId, Instant.now().plusSeconds(RETRY_SECONDS));
                             }
-                            finally
-                            {
-                                timestamps.remove(id);
-                                processing.remove(id);
-                            }
-                        });
-                    }
-                });
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        // the lease is released however the action ends
+                        return CompletableFuture.completedFuture(lease)
+                                .thenCompose(held -> run(held, guildId))
+                                .whenCompleteAsync((result, e) -> lease.release(), database);
+                    })
+                    .exceptionally(e ->
+                    {
+                        Logging.warn(EntryProcessor.class, "Error occurred when processing event action!");
+                        Logging.exception(EntryProcessor.class, ActionWatchdog.unwrap(e));
+                        return null;
+                    });
+        });
+
+        if (!queued)
+        {   // the guild's queue is full, try again shortly
+            Main.getEntryManager().getScheduler().schedule(entryId, guildId, Instant.now().plusSeconds(RETRY_SECONDS));
+        }
+    }
+
+    /**
+     * helper to process(), runs the entry's due action under the watchdog
+     * @param lease the lease held on the entry
+     * @param guildId ID of the guild the entry belongs to
+     * @return future completed once the action has finished (or has been abandoned)
+     */
+    private static CompletableFuture<Void> run(EntryLease lease, String guildId)
+    {
+        ScheduleEntry se = lease.getEntry();
+        ActionWatchdog watchdog = Main.getEntryManager().getWatchdog();
+        Instant due = watchdog.adjust(se.getId(), se.getNextActionTime());
+        if (due == null || due.isAfter(Instant.now()))
+        {   // nothing is due yet (or the action is dead-lettered), wait for the entry's next action
+            Main.getEntryManager().getScheduler().schedule(se.getId(), guildId, due);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // dispatch on the action tag
+        ActionType action = se.getNextAction();
+        return watchdog.run(se, action, lease, () ->
+        {
+            CompletableFuture<Void> future;
+            switch(action)
+            {
+                case END:
+                    future = se.end();
+                    break;
+                case START:
+                    future = se.start();
+                    break;
+                case REMIND:
+                    future = se.remind();
+                    break;
+                default:
+                    future = se.announce();
+                    break;
+            }
+            return future.exceptionally(e ->
+            {
+                if (!(ActionWatchdog.unwrap(e) instanceof PermissionException))
+                {
+                    throw new CompletionException(ActionWatchdog.unwrap(e));
+                }
+                // retrying will not help
+                Logging.warn(EntryProcessor.class,
+                        "Permission error on '"+se.getTitle()+"' ["+se.getId()+"]: "+ActionWatchdog.unwrap(e).getMessage());
+                return null;
+            });
+        });
+    }
+
+    /**
+     * re-renders an entry's display, invoked by the refresh scheduler when the entry's timers change,
+     * then schedules the entry's next refresh
+     * @param entryId ID of the entry to refresh
+     * @param guildId ID of the guild the entry belongs to
+     */
+    static void refresh(Integer entryId, String guildId)
+    {
+        boolean queued = Main.getEntryManager().getRefreshExecutor().submit(guildId, entryId, () ->
+        {
+            try
+            {
+                // identify which shard is responsible for the schedule
+                JDA jda = Main.getShardManager().getJDA(guildId);
+
+                // if the shard is not connected, do process the event
+                if (jda == null) return;
+                if (!jda.getStatus().equals(JDA.Status.CONNECTED)) return;
+
+                ScheduleEntry se = Main.getEntryManager().getEntry(entryId);
+                if (se == null) return;
+
+                se.reloadDisplay();
+                Main.getEntryManager().getRefreshScheduler()
+                        .schedule(entryId, guildId, MessageGenerator.nextTimerChange(se));
+            }
+            catch (PermissionException ignored)
+            {/* dont care */}
+            catch (Exception e)
+            {
+                Logging.warn(EntryProcessor.class, "Error occurred while updating event timer.");
+                Logging.exception(EntryProcessor.class, e);
+            }
+        });
+
+        if (!queued)
+        {   // the guild's queue is full, try again shortly
+            Main.getEntryManager().getRefreshScheduler()
+                    .schedule(entryId, guildId, Instant.now().plusSeconds(RETRY_SECONDS));
+        }
     }
 }
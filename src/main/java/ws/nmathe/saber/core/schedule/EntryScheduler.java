@@ -0,0 +1,148 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ws.nmathe.saber.utils.Logging;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory deadline scheduler for schedule entries.
+ * Holds one deadline per entry (only for deadlines within the current look-ahead horizon)
+ * and hands the entry ID (and the entry's guild ID) to the dispatcher at the exact instant the deadline is due.
+ * The horizon is advanced by whoever loads the look-ahead window from the database.
+ */
+class EntryScheduler
+{
+    private final DelayQueue<Deadline> queue = new DelayQueue<>();
+    private final Map<Integer, Deadline> deadlines = new ConcurrentHashMap<>(); // most recent deadline per entry
+    private final BiConsumer<Integer, String> dispatcher;
+    private volatile Instant horizon = Instant.EPOCH;
+
+    /**
+     * construct the scheduler and start the thread which waits on due deadlines
+     * @param name name to use for the scheduler thread
+     * @param dispatcher consumer invoked with the entry ID and guild ID when an entry's deadline is due
+     */
+    EntryScheduler(String name, BiConsumer<Integer, String> dispatcher)
+    {
+        this.dispatcher = dispatcher;
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        executor.execute(this::loop);
+    }
+
+    /**
+     * schedules (or reschedules) an entry to be dispatched at a specific instant,
+     * any previously scheduled deadline for the entry is discarded
+     * @param entryId the entry's ID
+     * @param guildId the ID of the guild the entry belongs to
+     * @param when instant at which to dispatch the entry, deadlines past the horizon are not held
+     */
+    void schedule(Integer entryId, String guildId, Instant when)
+    {
+        if (entryId == null) return;
+        if (when == null || when.isAfter(this.horizon))
+        {   // will be picked up by a later window load
+            this.cancel(entryId);
+            return;
+        }
+
+        Deadline previous = this.deadlines.get(entryId);
+        if (previous != null && previous.when.equals(when)) return;
+
+        Deadline deadline = new Deadline(entryId, guildId, when);
+        this.deadlines.put(entryId, deadline);
+        this.queue.add(deadline);
+    }
+
+    /**
+     * removes an entry from the scheduler, stale queue elements are discarded when they come due
+     * @param entryId the entry's ID
+     */
+    void cancel(Integer entryId)
+    {
+        if (entryId == null) return;
+        this.deadlines.remove(entryId);
+    }
+
+    /**
+     * extends the horizon up to which deadlines are held in memory
+     * @param horizon the new horizon
+     */
+    void setHorizon(Instant horizon)
+    {
+        this.horizon = horizon;
+    }
+
+    Instant getHorizon()
+    {
+        return this.horizon;
+    }
+
+    /**
+     * @return the number of entries with a pending deadline
+     */
+    int size()
+    {
+        return this.deadlines.size();
+    }
+
+    /**
+     * blocks on the queue for the next due deadline and dispatches its entry
+     */
+    private void loop()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                Deadline deadline = this.queue.take();
+                // skip deadlines which have since been rescheduled or cancelled
+                if (this.deadlines.remove(deadline.entryId, deadline))
+                {
+                    this.dispatcher.accept(deadline.entryId, deadline.guildId);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (Exception e)
+            {
+                Logging.exception(this.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * queue element, identity is used to distinguish an entry's current deadline from stale ones
+     */
+    private static class Deadline implements Delayed
+    {
+        private final Integer entryId;
+        private final String guildId;
+        private final Instant when;
+
+        Deadline(Integer entryId, String guildId, Instant when)
+        {
+            this.entryId = entryId;
+            this.guildId = guildId;
+            this.when = when;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(this.when.toEpochMilli() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            return this.when.compareTo(((Deadline) other).when);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ws.nmathe.saber.core.schedule;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * Read-only view of the fields of an entry needed to list, count, or sort entries.
+ * Summaries are read with a projection of those fields, so listing entries does not load their
+ * rsvp members, reminders, and announcement overrides, nor look up their schedule's zone and recurrence.
+ */
+public class EntrySummary
+{
+    // the fields read into a summary
+    static final Bson PROJECTION = fields(include("_id", "channelId", "messageId", "title", "start", "end"));
+
+    private final Integer id;
+    private final String channelId;
+    private final String messageId;
+    private final String title;
+    private final Instant start;
+    private final Instant end;
+
+    EntrySummary(Document document)
+    {
+        this.id        = document.getInteger("_id");
+        this.channelId = document.getString("channelId");
+        this.messageId = document.getString("messageId");
+        this.title     = document.getString("title");
+        this.start     = toInstant(document.getDate("start"));
+        this.end       = toInstant(document.getDate("end"));
+    }
+
+    public Integer getId()
+    {
+        return this.id;
+    }
+
+    public String getChannelId()
+    {
+        return this.channelId;
+    }
+
+    public String getMessageId()
+    {
+        return this.messageId;
+    }
+
+    public String getTitle()
+    {
+        return this.title;
+    }
+
+    public Instant getStart()
+    {
+        return this.start;
+    }
+
+    public Instant getEnd()
+    {
+        return this.end;
+    }
+
+    private static Instant toInstant(Date date)
+    {
+        return date == null ? null : date.toInstant();
+    }
+}
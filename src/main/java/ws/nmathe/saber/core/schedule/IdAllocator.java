@@ -0,0 +1,112 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.inc;
+
+/**
+ * Allocates entry IDs without a database query per ID.
+ * Blocks of sequence numbers are reserved from a counter document with $inc (so instances never share a block),
+ * and each sequence number is passed through a bijective scramble of the 31 bit positive integers
+ * so that consecutive entries do not receive visibly consecutive IDs.
+ * IDs which were assigned randomly before the allocator existed are skipped, these are found with
+ * a single query when a block is reserved.
+ */
+class IdAllocator
+{
+    private static final String COUNTER_ID = "event_ids";
+    private static final int BLOCK_SIZE = 1000;
+    private static final long MASK = 0x7FFFFFFFL;    // 31 bits, IDs are positive ints
+
+    private volatile Block block = new Block(0, 0, Collections.emptySet());
+
+    /**
+     * @return a new, unused entry ID
+     */
+    Integer next()
+    {
+        while (true)
+        {
+            Block block = this.block;
+            long sequence = block.next.getAndIncrement();
+            if (sequence < block.end)
+            {
+                int id = scramble(sequence);
+                if (id != 0 && !block.taken.contains(id)) return id;
+                continue;
+            }
+            this.reserve(block);
+        }
+    }
+
+    /**
+     * reserves the next block of sequence numbers, unless another thread has already replaced the exhausted block
+     */
+    private synchronized void reserve(Block exhausted)
+    {
+        if (this.block != exhausted) return;
+
+        Document counter = Main.getDBDriver().getCounterCollection().findOneAndUpdate(
+                eq("_id", COUNTER_ID), inc("next", (long) BLOCK_SIZE),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+        long end = ((Number) counter.get("next")).longValue();
+        long start = end - BLOCK_SIZE;
+
+        // find IDs in the block which are already in use
+        List<Integer> ids = new ArrayList<>(BLOCK_SIZE);
+        for (long sequence = start; sequence < end; sequence++)
+        {
+            ids.add(scramble(sequence));
+        }
+        Set<Integer> taken = new HashSet<>();
+        Main.getDBDriver().getEventCollection()
+                .find(in("_id", ids))
+                .projection(fields(include("_id")))
+                .forEach((Consumer<? super Document>) document -> taken.add(document.getInteger("_id")));
+
+        this.block = new Block(start, end, taken);
+    }
+
+    /**
+     * bijection on [0, 2^31), each step (odd multiplication, xor-shift) is invertible modulo 2^31
+     */
+    static int scramble(long sequence)
+    {
+        long x = sequence & MASK;
+        x = (x * 0x5DEECE6DL) & MASK;
+        x ^= x >>> 15;
+        x = (x * 0x2C1B3C6DL) & MASK;
+        x ^= x >>> 12;
+        x = (x * 0x297A2D39L) & MASK;
+        x ^= x >>> 15;
+        return (int) x;
+    }
+
+    /**
+     * a reserved range of sequence numbers
+     */
+    private static class Block
+    {
+        private final AtomicLong next;
+        private final long end;
+        private final Set<Integer> taken;   // IDs in the block which are already in use
+
+        Block(long start, long end, Set<Integer> taken)
+        {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.taken = taken;
+        }
+    }
+}
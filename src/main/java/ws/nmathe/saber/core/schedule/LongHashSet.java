@@ -0,0 +1,108 @@
+package ws.nmathe.saber.core.schedule;
+
+/**
+ * Set of snowflake IDs held unboxed in an open addressing table (linear probing, zero marks an empty slot).
+ * Not thread safe, users guard the set with their own lock.
+ */
+class LongHashSet
+{
+    private long[] table;
+    private int size = 0;
+
+    LongHashSet(int expected)
+    {
+        int capacity = 16;
+        while (capacity < expected * 2 + 2) capacity <<= 1;
+        this.table = new long[capacity];
+    }
+
+    boolean contains(long id)
+    {
+        if (id == 0) return false;
+        long[] table = this.table;
+        int mask = table.length - 1;
+        for (int i = slot(id, mask); table[i] != 0; i = (i + 1) & mask)
+        {
+            if (table[i] == id) return true;
+        }
+        return false;
+    }
+
+    void add(long id)
+    {
+        if (id == 0) return;
+        if ((this.size + 1) * 2 > this.table.length)
+        {   // keep the table at most half full
+            long[] old = this.table;
+            this.table = new long[old.length * 2];
+            this.size = 0;
+            for (long value : old)
+            {
+                if (value != 0) this.add(value);
+            }
+        }
+
+        int mask = this.table.length - 1;
+        int i = slot(id, mask);
+        while (this.table[i] != 0)
+        {
+            if (this.table[i] == id) return;
+            i = (i + 1) & mask;
+        }
+        this.table[i] = id;
+        this.size++;
+    }
+
+    void remove(long id)
+    {
+        if (id == 0) return;
+        int mask = this.table.length - 1;
+        int i = slot(id, mask);
+        while (this.table[i] != id)
+        {
+            if (this.table[i] == 0) return;
+            i = (i + 1) & mask;
+        }
+
+        // shift back following entries of the probe sequence into the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; this.table[j] != 0; j = (j + 1) & mask)
+        {
+            int home = slot(this.table[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask))
+            {
+                this.table[hole] = this.table[j];
+                hole = j;
+            }
+        }
+        this.table[hole] = 0;
+        this.size--;
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+
+    private static int slot(long id, int mask)
+    {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return the snowflake as a long, or zero if the string is not a snowflake
+     */
+    static long parse(String snowflake)
+    {
+        if (snowflake == null) return 0;
+        try
+        {
+            return Long.parseLong(snowflake);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package ws.nmathe.saber.core.schedule;
 
 //import net.dv8tion.jda.client.events.relationship.GenericRelationshipAddEvent;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Role;
@@ -15,6 +17,7 @@ import ws.nmathe.saber.utils.ParsingUtilities;
 import ws.nmathe.saber.utils.VerifyUtilities;
 
 import java.awt.*;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
 import java.time.temporal.ChronoUnit;
@@ -54,17 +57,18 @@ public class MessageGenerator
     }
 
     /**
-     * Primary method which generates a complete Discord message object for the event
+     * Generates the edit which updates an event's existing display message,
+     * only the embed (and the text, if the event has any) is set so the old message is not needed
      * @param se (ScheduleEntry) to generate a message display
-     * @return the message to be used to display the event in it's associated Discord channel
+     * @return the edit to apply to the event's display message
      */
-    public static MessageEditData generate(ScheduleEntry se, Message oldMessage)
+    public static MessageEditData generateEdit(ScheduleEntry se)
     {
         if (se == null) return null;
 
         MessageEmbed embed = generateEmbed(se);
         
-        MessageEditBuilder msgBuilder = MessageEditBuilder.fromMessage(oldMessage).setEmbeds(embed);
+        MessageEditBuilder msgBuilder = new MessageEditBuilder().setEmbeds(embed);
         if (se.getNonEmbededText() != null)
         {
             String fulltext = ParsingUtilities.processText(se.getNonEmbededText(), se, true);
@@ -75,6 +79,26 @@ public class MessageGenerator
         return msgBuilder.build();
     }
 
+    /**
+     * Computes a fingerprint of an event's rendered display,
+     * displays with equal fingerprints are identical so editing one into the other may be skipped
+     * @param messageId ID of the message the display is rendered into
+     * @param embeds the display's embeds
+     * @param content the display's text content
+     * @return fingerprint string
+     */
+    static String fingerprint(String messageId, List<MessageEmbed> embeds, String content)
+    {
+        Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putString(String.valueOf(messageId), StandardCharsets.UTF_8)
+                .putString(String.valueOf(content), StandardCharsets.UTF_8);
+        for (MessageEmbed embed : embeds)
+        {
+            hasher.putString(embed.toData().toString(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
     private static MessageEmbed generateEmbed(ScheduleEntry se)
     {
         // prepare title
@@ -90,14 +114,14 @@ public class MessageGenerator
 
         // generate the body of the embed
         String bodyContent;
-        String style = Main.getScheduleManager().getStyle(se.getChannelId());
-        if(style.equalsIgnoreCase("narrow"))
+        ScheduleSettings settings = Main.getScheduleManager().getSettings(se.getChannelId());
+        if(settings.getStyle().equalsIgnoreCase("narrow"))
         {
-            bodyContent = generateBodyNarrow(se);
+            bodyContent = generateBodyNarrow(se, settings);
         }
         else
         {
-            bodyContent = generateBodyFull(se);
+            bodyContent = generateBodyFull(se, settings);
         }
 
         // prepare the embed
@@ -126,14 +150,14 @@ public class MessageGenerator
      * @param se the ScheduleEntry Object represented by the display
      * @return the body content as a string
      */
-    private static String generateBodyFull(ScheduleEntry se)
+    private static String generateBodyFull(ScheduleEntry se, ScheduleSettings settings)
     {
         StringBuilder msg = new StringBuilder();
 
         //
         // create the upper code block
         //
-        String timeLines = generateTimeLines(se);
+        String timeLines = generateTimeLines(se, settings);
         String repeatLine = "> repeats " + se.getRecurrence().toString() + "\n";
         String expirationLine = generateExpirationLine(se);
         String locationLine = se.getLocation() == null ? "" : "<Location: " + se.getLocation() + ">\n";
@@ -155,14 +179,14 @@ public class MessageGenerator
         //
         // generate the lower code block
         //
-        String timerLine = generateTimerLine(se);
+        String timerLine = generateTimerLine(se, settings);
 
         // if rsvp is enabled, show the number of rsvp
         StringBuilder rsvpLine = new StringBuilder();
-        if (Main.getScheduleManager().isRSVPEnabled(se.getChannelId()))
+        if (settings.isRSVPEnabled())
         {
             rsvpLine.append("- ");
-            Map<String, String> options = Main.getScheduleManager().getRSVPOptions(se.getChannelId());
+            Map<String, String> options = settings.getRSVPOptions();
             for (String emoji : options.keySet()) // I iterate over the keys rather than the values to keep a order consistent with reactions
             {
                 String type = options.get(emoji);
@@ -205,10 +229,10 @@ public class MessageGenerator
      * @param se the ScheduleEntry Object represented by the display
      * @return the body content as a string
      */
-    private static String generateBodyNarrow(ScheduleEntry se)
+    private static String generateBodyNarrow(ScheduleEntry se, ScheduleSettings settings)
     {
         // create the first line of the body
-        String timeLines = generateTimeLines(se);
+        String timeLines = generateTimeLines(se, settings);
 
         // timezone and repeat information
         StringBuilder repeatLine = new StringBuilder()
@@ -223,9 +247,9 @@ public class MessageGenerator
 
         // if rsvp is enabled, show the number of rsvps
         StringBuilder rsvpLine = new StringBuilder();
-        if(Main.getScheduleManager().isRSVPEnabled(se.getChannelId()))
+        if(settings.isRSVPEnabled())
         {
-            Map<String, String> options = Main.getScheduleManager().getRSVPOptions(se.getChannelId());
+            Map<String, String> options = settings.getRSVPOptions();
             // iterate over the keys rather than the values to keep
             // the order consistent with the order reactions are displayed
             for(String emoji : options.keySet())
@@ -274,10 +298,10 @@ public class MessageGenerator
      * @param se the ScheduleEntry
      * @return display lines containing the start/end information
      */
-    private static String generateTimeLines(ScheduleEntry se)
+    private static String generateTimeLines(ScheduleEntry se, ScheduleSettings settings)
     {
         StringBuilder timeLines = new StringBuilder();
-        List<ZoneId> altZones = Main.getScheduleManager().getAltZones(se.getChannelId());
+        List<ZoneId> altZones = new ArrayList<>(settings.getAltZones());
         if (!altZones.isEmpty())
         {
             altZones.add(se.getStart().getZone());  // add primary zone to list
@@ -288,12 +312,12 @@ public class MessageGenerator
             });
             for (ZoneId zone : altZones)
             {
-                timeLines.append(generateTimeLine(se, zone));
+                timeLines.append(generateTimeLine(se, zone, settings));
             }
         }
         else
         {
-            timeLines.append(generateTimeLine(se, null));
+            timeLines.append(generateTimeLine(se, null, settings));
         }
         return timeLines.toString();
     }
@@ -304,10 +328,10 @@ public class MessageGenerator
      * @param se the ScheduleEntry Object represented by the display
      * @return the body content as a string
      */
-    private static String generateTimeLine(ScheduleEntry se, ZoneId zone)
+    private static String generateTimeLine(ScheduleEntry se, ZoneId zone, ScheduleSettings settings)
     {
         String timeFormatter;
-        if(Main.getScheduleManager().getClockFormat(se.getChannelId()).equals("24"))
+        if(settings.getClockFormat().equals("24"))
             timeFormatter = "H:mm";
         else
             timeFormatter = "h:mm a";
@@ -377,10 +401,10 @@ public class MessageGenerator
      * @param se the ScheduleEntry object
      * @return String representing the line containing the time until
      */
-    private static String generateTimerLine(ScheduleEntry se)
+    private static String generateTimerLine(ScheduleEntry se, ScheduleSettings settings)
     {
         StringBuilder line = new StringBuilder();
-        List<ZoneId> altZones = Main.getScheduleManager().getAltZones(se.getChannelId());
+        List<ZoneId> altZones = settings.getAltZones();
 
         if (altZones.isEmpty())
         {
@@ -484,6 +508,57 @@ public class MessageGenerator
         }
     }
 
+    /**
+     * determines the next instant at which the timers rendered by generateTimerLine() or
+     * the reminder timers rendered in the footer will change, mirrors the rounding done by genTimerHelper()
+     * @param se ScheduleEntry object
+     * @return the instant, or null if the timers do not change (before the entry's next action)
+     */
+    static Instant nextTimerChange(ScheduleEntry se)
+    {
+        ZonedDateTime now = ZonedDateTime.now();
+        Instant next = timerChange(se.hasStarted() ? se.getEnd() : se.getStart(), now, false);
+
+        List<Date> reminders = new ArrayList<>();
+        reminders.addAll(se.getReminders());
+        reminders.addAll(se.getEndReminders());
+        for (Date reminder : reminders)
+        {
+            ZonedDateTime time = ZonedDateTime.ofInstant(reminder.toInstant(), ZoneId.systemDefault());
+            Instant change = timerChange(time, now, true);
+            if (next == null || (change != null && change.isBefore(next))) next = change;
+        }
+        return next;
+    }
+
+    /**
+     * used by nextTimerChange() to find the next change of a single timer
+     * @param time the time the timer counts down to
+     * @param now the current time
+     * @param fineGrain the timer displays minutes when within the hour
+     */
+    private static Instant timerChange(ZonedDateTime time, ZonedDateTime now, boolean fineGrain)
+    {
+        long timeTil = now.until(time, ChronoUnit.SECONDS);
+        if (timeTil >= 24 * 60 * 60)
+        {   // days are counted by date, so change at midnight or once the time is within a day
+            Instant midnight = now.truncatedTo(ChronoUnit.DAYS).plusDays(1).toInstant();
+            Instant withinDay = time.minusSeconds(24 * 60 * 60 - 1).toInstant();
+            return midnight.isBefore(withinDay) ? midnight : withinDay;
+        }
+
+        long unit = (fineGrain && timeTil < 60 * 60) ? 60 : 60 * 60;
+        long count = (timeTil + unit - 1) / unit;
+        if (count > 1)
+        {   // counts are rounded up, so the next change is when the count drops by one
+            return time.minusSeconds((count - 1) * unit).toInstant();
+        }
+        if (fineGrain && unit == 60 * 60 && timeTil > 0)
+        {   // changes from hours to minutes
+            return time.minusSeconds(60 * 60 - 1).toInstant();
+        }
+        return null;
+    }
 
     /**
      * creates the footer text to be added to the message embed
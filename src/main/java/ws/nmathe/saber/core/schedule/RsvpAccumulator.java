@@ -0,0 +1,253 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.utils.Logging;
+import ws.nmathe.saber.utils.MessageUtilities;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Updates.*;
+
+/**
+ * Coalesces bursts of RSVP reactions on an entry.
+ * Reactions are decided against an entry held in memory for the duration of a short window,
+ * the conditional updates they produce are written in one bulk write when the window closes,
+ * after which the entry's display is re-rendered once and the window's log lines are sent as one message.
+ * The updates keep their conditions (membership, group limit), so the database stays correct
+ * should the in-memory entry be stale. Log lines and confirmations are only sent for the updates
+ * found to have taken effect in the entry read back after the write.
+ */
+public class RsvpAccumulator
+{
+    // length of a window, in milliseconds
+    private static final int WINDOW_MILLIS = 500;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();   // message ID -> open window
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("RsvpTimer-%d").setDaemon(true).build());
+
+    /**
+     * @param messageId ID of the entry's display message
+     * @return the entry held for an open window, or null if there is none
+     */
+    public ScheduleEntry getEntry(String messageId)
+    {
+        Batch batch = this.batches.get(messageId);
+        return batch == null ? null : batch.entry;
+    }
+
+    /**
+     * records an rsvp update on an entry, opening a window if the entry does not have one,
+     * should be called while holding the entry's lock
+     * @param se the entry, with the update already applied to its rsvp members
+     * @param update the conditional update to write
+     * @param applied tests whether the update has taken effect on the entry as read after the write
+     * @param logChannel ID of the channel rsvp actions are logged to (may be empty)
+     * @param logLine description of the rsvp action for the log
+     * @param confirmation sends the user their confirmation (may be null)
+     */
+    void record(ScheduleEntry se, WriteModel<Document> update, Predicate<ScheduleEntry> applied,
+                String logChannel, String logLine, Runnable confirmation)
+    {
+        Batch batch = this.batches.computeIfAbsent(se.getMessageId(), key -> new Batch(se));
+        synchronized (batch)
+        {
+            batch.updates.add(update);
+            batch.outcomes.add(new Outcome(applied, logChannel, logLine, confirmation));
+            if (!batch.scheduled)
+            {
+                batch.scheduled = true;
+                this.schedule(se.getMessageId(), batch);
+            }
+        }
+    }
+
+    /**
+     * closes an entry's window, writing its updates and re-rendering the entry's display
+     */
+    private void flush(String messageId, Batch batch)
+    {
+        List<WriteModel<Document>> updates;
+        List<Outcome> outcomes;
+        synchronized (batch)
+        {
+            updates = batch.updates;
+            outcomes = batch.outcomes;
+            batch.updates = new ArrayList<>();
+            batch.outcomes = new ArrayList<>();
+        }
+
+        try
+        {
+            if (!updates.isEmpty())
+            {
+                Main.getDBDriver().getEventCollection()
+                        .bulkWrite(updates, new BulkWriteOptions().ordered(true));
+            }
+
+            // render from the stored entry, other fields of the entry may have been changed during the window
+            ScheduleEntry se = Main.getEntryManager().getEntry(batch.entry.getId());
+            if (se == null) return;
+            se.reloadDisplay();
+
+            // confirm and log only the updates whose conditions matched
+            Map<String, List<String>> logs = new LinkedHashMap<>();  // channel ID -> log lines
+            for (Outcome outcome : outcomes)
+            {
+                if (!outcome.applied.test(se)) continue;
+                if (!outcome.logChannel.isEmpty() && outcome.logChannel.matches("\\d+"))
+                {
+                    logs.computeIfAbsent(outcome.logChannel, key -> new ArrayList<>()).add(outcome.logLine);
+                }
+                if (outcome.confirmation != null) outcome.confirmation.run();
+            }
+
+            // send the window's log lines
+            JDA jda = Main.getShardManager().getJDA(batch.entry.getGuildId());
+            logs.forEach((channelId, lines) ->
+            {
+                TextChannel channel = jda == null ? null : jda.getTextChannelById(channelId);
+                if (channel == null) return;
+                StringBuilder content = new StringBuilder();
+                for (String line : lines)
+                {
+                    if (content.length() + line.length() + 1 > 2000)
+                    {
+                        MessageUtilities.sendMsg(content.toString(), channel, null);
+                        content = new StringBuilder();
+                    }
+                    content.append(line).append("\n");
+                }
+                if (content.length() > 0) MessageUtilities.sendMsg(content.toString(), channel, null);
+            });
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+        finally
+        {
+            synchronized (batch)
+            {
+                if (batch.updates.isEmpty())
+                {   // close the window, the next reaction loads the entry afresh
+                    batch.scheduled = false;
+                    this.batches.remove(messageId, batch);
+                }
+                else
+                {   // reactions arrived while flushing
+                    this.schedule(messageId, batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * flushes an entry's window once it has run its length,
+     * the timer only measures the window, the flush itself runs on the entry manager's database executor
+     */
+    private void schedule(String messageId, Batch batch)
+    {
+        this.timer.schedule(() -> Main.getEntryManager().getDatabaseExecutor()
+                        .execute(() -> this.flush(messageId, batch)),
+                WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * creates the update which adds a user to an rsvp group, provided the user is not already
+     * a member and the group has not reached its limit, and removes the user from the given other groups
+     * @param entryId ID of the entry
+     * @param group name of the rsvp group to join
+     * @param userId ID of the user
+     * @param limit the group's member limit (-1 if unlimited)
+     * @param others groups the user is to be removed from (exclusive rsvp)
+     */
+    static WriteModel<Document> join(Integer entryId, String group, String userId, int limit, Collection<String> others)
+    {
+        String field = "rsvp_members." + group;
+        List<Bson> conditions = new ArrayList<>();
+        conditions.add(eq("_id", entryId));
+        conditions.add(ne(field, userId));
+        if (limit == 0)
+        {   // the group admits no one, the update must not match
+            conditions.add(exists("_id", false));
+        }
+        else if (limit > 0)
+        {   // the group is full if the array has an element at index limit-1
+            conditions.add(exists(field + "." + (limit - 1), false));
+        }
+
+        List<Bson> updates = new ArrayList<>();
+        updates.add(addToSet(field, userId));
+        for (String other : others)
+        {
+            if (!other.equals(group)) updates.add(pull("rsvp_members." + other, userId));
+        }
+        return new UpdateOneModel<>(and(conditions), combine(updates));
+    }
+
+    /**
+     * creates the update which removes a user from each of an entry's rsvp groups
+     * @param entryId ID of the entry
+     * @param groups the entry's rsvp groups
+     * @param userId ID of the user
+     */
+    static WriteModel<Document> leave(Integer entryId, Collection<String> groups, String userId)
+    {
+        List<Bson> updates = new ArrayList<>();
+        for (String group : groups)
+        {
+            updates.add(pull("rsvp_members." + group, userId));
+        }
+        return new UpdateOneModel<>(eq("_id", entryId), combine(updates));
+    }
+
+    /**
+     * an entry's open window
+     */
+    private static class Batch
+    {
+        private final ScheduleEntry entry;
+        private List<WriteModel<Document>> updates = new ArrayList<>();
+        private List<Outcome> outcomes = new ArrayList<>();  // in the order of updates
+        private boolean scheduled = false;
+
+        Batch(ScheduleEntry entry)
+        {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * what to report once an update is known to have taken effect
+     */
+    private static class Outcome
+    {
+        private final Predicate<ScheduleEntry> applied;
+        private final String logChannel;
+        private final String logLine;
+        private final Runnable confirmation;
+
+        Outcome(Predicate<ScheduleEntry> applied, String logChannel, String logLine, Runnable confirmation)
+        {
+            this.applied = applied;
+            this.logChannel = logChannel;
+            this.logLine = logLine;
+            this.confirmation = confirmation;
+        }
+    }
+}
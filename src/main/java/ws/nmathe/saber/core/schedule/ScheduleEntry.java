@@ -4,8 +4,14 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.exceptions.PermissionException;
-import org.bson.Document;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
+import org.bson.BsonDocument;
+import org.bson.BsonReader;
+import org.bson.BsonString;
+import org.bson.BsonType;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.utils.MessageUtilities;
 import ws.nmathe.saber.utils.ParsingUtilities;
@@ -17,11 +23,16 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.set;
+
 /**
  * A ScheduleEntry object represents a currently scheduled entry is either waiting to start or has already started
  * start and end functions are to be triggered upon the scheduled starting time and ending time.
@@ -29,6 +40,9 @@ import java.util.stream.Stream;
  */
 public class ScheduleEntry
 {
+    // types of actions processed for an entry, in order of precedence
+    enum ActionType {SPECIAL, END, START, REMIND}
+
     // identifiers
     private Integer entryId;                      // 16 bit identifier
     private String msgId;
@@ -68,6 +82,11 @@ public class ScheduleEntry
     private String location;
     private String colorCode;
     private String nonEmbeded;
+    private String renderHash;               // fingerprint of the display last rendered
+    private volatile boolean abandoned;      // set once the running action has exceeded the watchdog's time limit
+
+    // the entry's document as last read from (or written to) the database, used to find the fields which changed
+    private BsonDocument persisted;
 
     // announcement overrides
     // these hold temporary values
@@ -133,113 +152,149 @@ public class ScheduleEntry
 
 
     /**
-     * Constructor for a fully initialized ScheduleEntry
-     * @param entryDocument (Document) taken from the events collection in the database backing the bot
+     * Constructor for a fully initialized ScheduleEntry, used by the ScheduleEntryCodec
+     * @param reader (BsonReader) positioned at the start of a document from the events collection
+     * @param persisted (BsonDocument) the document being read, kept as the entry's persisted snapshot
      */
-    @SuppressWarnings("unchecked")
-    public ScheduleEntry(Document entryDocument)
+    ScheduleEntry(BsonReader reader, BsonDocument persisted)
     {
-        // identifiers
-        this.entryId  = entryDocument.getInteger("_id");
-        this.msgId    = (String) entryDocument.get("messageId");
-        this.chanId   = (String) entryDocument.get("channelId");
-        this.guildId  = (String) entryDocument.get("guildId");
-        this.googleId = (String) entryDocument.get("googleId");
+        Date start = null, end = null, origStart = null, expire = null, deadline = null;
+        Integer repeat = null, count = null;
 
-        // entry zone information
-        ZoneId zone = Main.getScheduleManager().getTimeZone(this.chanId);
-
-        // main parameters
-        this.title       = entryDocument.getString("title");
-        this.start       = ZonedDateTime.ofInstant((entryDocument.getDate("start")).toInstant(), zone);
-        this.end         = ZonedDateTime.ofInstant((entryDocument.getDate("end")).toInstant(), zone);
-        this.comments    = (ArrayList<String>) entryDocument.get("comments");
-        this.hasStarted  = (boolean) entryDocument.get("hasStarted");
-        this.description = entryDocument.get("description")==null ?
-                "%g" : entryDocument.getString("description");
-
-        // construct the recurrence object
-        ZonedDateTime dtStart = entryDocument.get("orig_start")==null ?
-                this.start : ZonedDateTime.ofInstant((entryDocument.getDate("orig_start")).toInstant(), zone);
-        if (entryDocument.get("recurrence") != null)
-        {   // new recurrence design
-            this.recurrence = new EventRecurrence(entryDocument.getInteger("recurrence"), dtStart);
-        }
-        else
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
         {
-            this.recurrence = new EventRecurrence(dtStart);
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL)
+            {
+                reader.readNull();
+                continue;
+            }
+            switch (name)
+            {
+                // identifiers
+                case "_id": this.entryId = ScheduleEntryCodec.readInteger(reader); break;
+                case "messageId": this.msgId = ScheduleEntryCodec.readString(reader); break;
+                case "channelId": this.chanId = ScheduleEntryCodec.readString(reader); break;
+                case "guildId": this.guildId = ScheduleEntryCodec.readString(reader); break;
+                case "googleId": this.googleId = ScheduleEntryCodec.readString(reader); break;
+
+                // main parameters
+                case "title": this.title = ScheduleEntryCodec.readString(reader); break;
+                case "start": start = ScheduleEntryCodec.readDate(reader); break;
+                case "end": end = ScheduleEntryCodec.readDate(reader); break;
+                case "comments": this.comments = ScheduleEntryCodec.readStrings(reader); break;
+                case "hasStarted": this.hasStarted = Boolean.TRUE.equals(ScheduleEntryCodec.readBoolean(reader)); break;
+                case "description": this.description = ScheduleEntryCodec.readString(reader); break;
+
+                // recurrence
+                case "orig_start": origStart = ScheduleEntryCodec.readDate(reader); break;
+                case "recurrence": repeat = ScheduleEntryCodec.readInteger(reader); break;
+                case "expire": expire = ScheduleEntryCodec.readDate(reader); break;
+                case "count": count = ScheduleEntryCodec.readInteger(reader); break;
+
+                // reminders
+                case "reminders": this.reminders = ScheduleEntryCodec.readDates(reader); break;
+                case "end_reminders": this.endReminders = ScheduleEntryCodec.readDates(reader); break;
+
+                // rsvp
+                case "rsvp_members":
+                    this.rsvpMembers = ScheduleEntryCodec.readMap(reader, new LinkedHashMap<>(),
+                            ScheduleEntryCodec::readStrings);
+                    break;
+                case "rsvp_limits":
+                    this.rsvpLimits = ScheduleEntryCodec.readMap(reader, new LinkedHashMap<>(),
+                            ScheduleEntryCodec::readInteger);
+                    break;
+                case "deadline": deadline = ScheduleEntryCodec.readDate(reader); break;
+
+                // toggles
+                case "start_disabled": this.quietStart = Boolean.TRUE.equals(ScheduleEntryCodec.readBoolean(reader)); break;
+                case "end_disabled": this.quietEnd = Boolean.TRUE.equals(ScheduleEntryCodec.readBoolean(reader)); break;
+                case "reminders_disabled": this.quietRemind = Boolean.TRUE.equals(ScheduleEntryCodec.readBoolean(reader)); break;
+
+                // urls
+                case "url": this.titleUrl = ScheduleEntryCodec.readString(reader); break;
+                case "image": this.imageUrl = ScheduleEntryCodec.readString(reader); break;
+                case "thumbnail": this.thumbnailUrl = ScheduleEntryCodec.readString(reader); break;
+
+                // announcement overrides
+                case "announcements":
+                    List<Date> announcements = ScheduleEntryCodec.readDates(reader);
+                    if (announcements != null) this.announcements = new HashSet<>(announcements);
+                    break;
+                case "announcement_dates":
+                    this.aDates = ScheduleEntryCodec.readMap(reader, new HashMap<>(), ScheduleEntryCodec::readDate);
+                    break;
+                case "announcement_times":
+                    this.aTimes = ScheduleEntryCodec.readMap(reader, new HashMap<>(), ScheduleEntryCodec::readString);
+                    break;
+                case "announcement_targets":
+                    this.aTargets = ScheduleEntryCodec.readMap(reader, new HashMap<>(), ScheduleEntryCodec::readString);
+                    break;
+                case "announcement_messages":
+                    this.aMessages = ScheduleEntryCodec.readMap(reader, new HashMap<>(), ScheduleEntryCodec::readString);
+                    break;
+
+                // misc
+                case "location": this.location = ScheduleEntryCodec.readString(reader); break;
+                case "color": this.colorCode = ScheduleEntryCodec.readString(reader); break;
+                case "non_embeded": this.nonEmbeded = ScheduleEntryCodec.readString(reader); break;
+                case "render_hash": this.renderHash = ScheduleEntryCodec.readString(reader); break;
+
+                default: reader.skipValue();
+            }
         }
+        reader.readEndDocument();
+
+        // fields missing from (or of the wrong type in) older documents
+        if (this.comments == null) this.comments = new ArrayList<>();
+        if (this.description == null) this.description = "%g";
+        if (this.reminders == null) this.reminders = new ArrayList<>();
+        if (this.endReminders == null) this.endReminders = new ArrayList<>();
+        if (this.rsvpMembers == null) this.rsvpMembers = new LinkedHashMap<>();
+        if (this.rsvpLimits == null) this.rsvpLimits = new LinkedHashMap<>();
+        if (this.announcements == null) this.announcements = new HashSet<>();
+        if (this.aDates == null) this.aDates = new HashMap<>();
+        if (this.aTimes == null) this.aTimes = new HashMap<>();
+        if (this.aTargets == null) this.aTargets = new HashMap<>();
+        if (this.aMessages == null) this.aMessages = new HashMap<>();
+
+        // the times are zoned once the entry's channel (and so the schedule's zone) is known
+        ZoneId zone = Main.getScheduleManager().getTimeZone(this.chanId);
+        this.start = ZonedDateTime.ofInstant(start.toInstant(), zone);
+        this.end   = ZonedDateTime.ofInstant(end.toInstant(), zone);
+        this.rsvpDeadline = deadline == null ? null : ZonedDateTime.ofInstant(deadline.toInstant(), zone);
 
-        if (entryDocument.get("expire") != null)
+        // construct the recurrence object
+        ZonedDateTime dtStart = origStart == null ? this.start : ZonedDateTime.ofInstant(origStart.toInstant(), zone);
+        this.recurrence = repeat == null ? new EventRecurrence(dtStart) : new EventRecurrence(repeat, dtStart);
+        if (expire != null)
         {   // if event has an expire date
-            this.recurrence.setExpire(ZonedDateTime.ofInstant(entryDocument.getDate("expire").toInstant(), zone));
+            this.recurrence.setExpire(ZonedDateTime.ofInstant(expire.toInstant(), zone));
         }
-        else if (entryDocument.get("count") != null)
+        else if (count != null)
         {   // else if event has a count limit
-            this.recurrence.setCount(entryDocument.getInteger("count"));
+            this.recurrence.setCount(count);
         }
 
-        // reminders
-        this.reminders = entryDocument.get("reminders")!=null ?
-                (List<Date>) entryDocument.get("reminders") : new ArrayList<>();
-        this.endReminders = entryDocument.get("end_reminders")!=null ?
-                (List<Date>) entryDocument.get("end_reminders") : new ArrayList<>();
-
-        // rsvp
-        this.rsvpMembers = (Map) (entryDocument.get("rsvp_members") == null ?
-                new LinkedHashMap<>() : entryDocument.get("rsvp_members"));
-        this.rsvpLimits = (Map) (entryDocument.get("rsvp_limits") == null ?
-                new LinkedHashMap<>() : entryDocument.get("rsvp_limits"));
-        this.rsvpDeadline = entryDocument.get("deadline") == null ?
-                null : ZonedDateTime.ofInstant(entryDocument.getDate("deadline").toInstant(), zone);
-
-        // toggles
-        this.quietStart = (boolean) (entryDocument.get("start_disabled") != null ?
-                entryDocument.get("start_disabled") : false);
-        this.quietEnd = (boolean) (entryDocument.get("end_disabled") != null ?
-                entryDocument.get("end_disabled") : false);
-        this.quietRemind = (boolean) (entryDocument.get("reminders_disabled") != null ?
-                entryDocument.get("reminders_disabled") : false);
-
-        // urls
-        this.titleUrl     = entryDocument.getString("url");
-        this.imageUrl     = entryDocument.getString("image");
-        this.thumbnailUrl = entryDocument.getString("thumbnail");
-
-        // announcement overrides
-        this.announcements = entryDocument.get("announcements") == null ?
-                new HashSet<>() : new HashSet<>(((List<Date>) entryDocument.get("announcements")));
-        this.aDates = entryDocument.get("announcement_dates") == null ?
-                new HashMap<>() : (Map<String, Date>) entryDocument.get("announcement_dates");
-        this.aTimes = entryDocument.get("announcement_times") == null ?
-                new HashMap<>() : (Map<String,String>) entryDocument.get("announcement_times");
-        this.aTargets = entryDocument.get("announcement_targets") == null ?
-                new HashMap<>() : (Map<String,String>) entryDocument.get("announcement_targets");
-        this.aMessages = entryDocument.get("announcement_messages") == null ?
-                new HashMap<>() : (Map<String,String>) entryDocument.get("announcement_messages");
-
-        // misc
-        this.location = entryDocument.get("location") == null ?
-                null : entryDocument.getString("location");
-        this.colorCode = entryDocument.get("color") == null ?
-                null : entryDocument.getString("color");
-        this.nonEmbeded = entryDocument.get("non_embeded") == null?
-                null : entryDocument.getString("non_embeded");
+        this.persisted = persisted;
     }
 
 
-    public void announce()
+    /**
+     * handles sending special announcements without blocking
+     */
+    public CompletableFuture<Void> announce()
     {
-        Message message = this.getMessageObject();
-        if (message == null) return;
-        this.announce(message);
+        return this.withGuild(this::announce);
     }
 
 
     /**
      * handles sending special announcements
      */
-    public void announce(Message message)
+    private void announce(Guild guild, List<Runnable> sends)
     {
         // find all expired Dates' announcement IDs
         Collection<String> expired = new ArrayList<>();
@@ -276,7 +331,7 @@ public class ScheduleEntry
                 String target = this.aTargets.get(key);
 
                 // send announcement
-                this.makeAnnouncement(message, text, target);
+                sends.add(() -> this.makeAnnouncement(guild, text, target));
                 Logging.event(this.getClass(), "Sent special announcement for event " +
                         this.getTitle() + " [" + this.getId() + "]");
             }
@@ -288,18 +343,19 @@ public class ScheduleEntry
     }
 
 
-    public void remind()
+    /**
+     * handles sending reminder notifications without blocking
+     */
+    public CompletableFuture<Void> remind()
     {
-        Message message = this.getMessageObject();
-        if (message == null) return;
-        this.remind(message);
+        return this.withGuild(this::remind);
     }
 
 
     /**
      * handles sending reminder notifications
      */
-    public void remind(Message message)
+    private void remind(Guild guild, List<Runnable> sends)
     {
         Date lastDate = null;
         List<Date> dates = Stream.concat(this.reminders.stream(), this.endReminders.stream())
@@ -321,8 +377,9 @@ public class ScheduleEntry
         Main.getEntryManager().updateEntry(this, false);
 
         // parse message and get the target channels
-        String text = ParsingUtilities.processText(Main.getScheduleManager().getReminderFormat(this.chanId), this, true);
-        String identifier = Main.getScheduleManager().getReminderChan(this.chanId);
+        ScheduleSettings settings = Main.getScheduleManager().getSettings(this.chanId);
+        String text = ParsingUtilities.processText(settings.getReminderFormat(), this, true);
+        String identifier = settings.getReminderChan();
 
         if (lastDate != null)
         {
@@ -332,7 +389,7 @@ public class ScheduleEntry
             {   // send reminder
                 if (!this.quietRemind)
                 {
-                    this.makeAnnouncement(message, text, identifier);
+                    sends.add(() -> this.makeAnnouncement(guild, text, identifier));
                     Logging.event(this.getClass(), "Sent reminder for event " + this.getTitle() + " [" + this.getId() + "]");
                 }
                 else
@@ -348,21 +405,23 @@ public class ScheduleEntry
         }
     }
 
-    public void start()
+    /**
+     * handles the event's start without blocking
+     */
+    public CompletableFuture<Void> start()
     {
-        Message message = this.getMessageObject();
-        if (message == null) return;
-        this.start(message);
+        return this.withMessageCheck(this::start);
     }
 
     /**
      * Handles when an event begins
      */
-    public void start(Message message)
+    private void start(Guild guild, List<Runnable> sends)
     {
         // create start message and grab identifier before modifying entry
-        String text = ParsingUtilities.processText(Main.getScheduleManager().getStartAnnounceFormat(this.chanId), this, true);
-        String identifier = Main.getScheduleManager().getStartAnnounceChan(this.chanId);
+        ScheduleSettings settings = Main.getScheduleManager().getSettings(this.chanId);
+        String text = ParsingUtilities.processText(settings.getStartAnnounceFormat(), this, true);
+        String identifier = settings.getStartAnnounceChan();
 
         // is the announcement late?
         Integer threshold = Main.getGuildSettingsManager().getGuildSettings(this.getGuildId()).getLateThreshold();
@@ -371,7 +430,7 @@ public class ScheduleEntry
         // do database updates before sending announcement
         if (this.start.isEqual(this.end))
         {   // process event repeat
-            this.repeat(message);
+            this.repeat(guild);
         }
         else // update event to has started
         {    // try to update db
@@ -385,7 +444,7 @@ public class ScheduleEntry
             // send start announcement
             if (!this.quietStart)
             {
-                this.makeAnnouncement(message, text, identifier);
+                sends.add(() -> this.makeAnnouncement(guild, text, identifier));
                 String logStr = "Sent start announcement for event \"" + this.getTitle() + "\" [" + this.entryId + "]";
                 Logging.event(this.getClass(), logStr);
             }
@@ -402,37 +461,38 @@ public class ScheduleEntry
     }
 
 
-    public void end()
+    /**
+     * handles the event's end without blocking
+     */
+    public CompletableFuture<Void> end()
     {
-        Message message = this.getMessageObject();
-        if (message == null) return;
-        this.end(message);
+        return this.withMessageCheck(this::end);
     }
 
 
     /**
      * handles when an event ends
      */
-    public void end(Message message)
+    private void end(Guild guild, List<Runnable> sends)
     {
         // create the announcement message before modifying event
-        String text = ParsingUtilities.processText(Main.getScheduleManager()
-                .getEndAnnounceFormat(this.chanId), this, true);
-        String identifier = Main.getScheduleManager().getEndAnnounceChan(this.chanId);
+        ScheduleSettings settings = Main.getScheduleManager().getSettings(this.chanId);
+        String text = ParsingUtilities.processText(settings.getEndAnnounceFormat(), this, true);
+        String identifier = settings.getEndAnnounceChan();
 
         // check if the event is late
         Integer threshold = Main.getGuildSettingsManager().getGuildSettings(this.getGuildId()).getLateThreshold();
         Boolean late = this.end.isAfter(ZonedDateTime.now().minusMinutes(threshold));
 
         // update entry
-        this.repeat(message);
+        this.repeat(guild);
 
         // dont send end announcement if late
         if (late)
         {
             if (!this.quietEnd)
             {
-                this.makeAnnouncement(message, text, identifier);
+                sends.add(() -> this.makeAnnouncement(guild, text, identifier));
                 String logStr = "Sent ended announcement for event \"" + this.getTitle() + "\" [" + this.entryId + "]";
                 Logging.event(this.getClass(), logStr);
             }
@@ -452,15 +512,93 @@ public class ScheduleEntry
     /**
      * Determines what needs to be done to an event when an event ends
      */
-    public boolean repeat()
+    public CompletableFuture<Void> repeat()
     {
-        Message msg = this.getMessageObject();
-        if (msg == null) return false;
-        this.repeat(msg);
-        return true;
+        return this.withMessageCheck((guild, sends) -> this.repeat(guild));
     }
 
-    private void repeat(Message message)
+    /**
+     * runs an action as two stages: the action's database work runs with the entry's guild on the database executor
+     * (nothing is run if the guild is not available to this instance), then the announcements the action
+     * produced are queued on JDA, the entry's message is not retrieved (it is edited and deleted by ID),
+     * the stages which have not yet run when the action is abandoned are skipped
+     * @param action the action, given the entry's guild and the list to add its announcements to
+     * @return future completed once the announcements have been queued
+     */
+    private CompletableFuture<Void> withGuild(BiConsumer<Guild, List<Runnable>> action)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            JDA jda = Main.getShardManager().getJDA(this.guildId);
+            Guild guild = jda == null ? null : jda.getGuildById(this.guildId);
+            List<Runnable> sends = new ArrayList<>();
+            if (guild != null && !this.abandoned) action.accept(guild, sends);
+            return sends;
+        }, Main.getEntryManager().getDatabaseExecutor())
+                .thenAccept(sends ->
+                {
+                    if (this.abandoned)
+                    {
+                        if (!sends.isEmpty()) Logging.warn(this.getClass(), "Dropped " + sends.size() +
+                                " late announcement(s) of abandoned action on '" + this.title + "' [" + this.entryId + "]");
+                        return;
+                    }
+                    sends.forEach(Runnable::run);
+                });
+    }
+
+    /**
+     * marks the action running on the entry as abandoned, the announcements it has not yet made are dropped
+     */
+    void abandon()
+    {
+        this.abandoned = true;
+    }
+
+    /**
+     * runs an action through withGuild() once the entry's message is known to exist,
+     * used by the actions which reschedule or remove the entry (start, end, repeat) so that an entry whose message
+     * has been deleted is removed rather than announced and repeated, other actions learn of it when the display is edited
+     * @param action the action, given the entry's guild and the list to add its announcements to
+     * @return future completed once the announcements have been queued (or the action has been skipped)
+     */
+    private CompletableFuture<Void> withMessageCheck(BiConsumer<Guild, List<Runnable>> action)
+    {
+        JDA jda = Main.getShardManager().getJDA(this.guildId);
+        TextChannel channel = jda == null ? null : jda.getTextChannelById(this.chanId);
+        if (channel == null || this.msgId == null) return CompletableFuture.completedFuture(null);
+
+        String messageId = this.msgId;
+        CompletableFuture<Boolean> exists = new CompletableFuture<>();
+        try
+        {
+            channel.retrieveMessageById(messageId).queue(message -> exists.complete(true), e ->
+            {
+                if (e instanceof ErrorResponseException &&
+                        ((ErrorResponseException) e).getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE)
+                {
+                    Main.getEntryManager().getDatabaseExecutor().execute(() ->
+                            Main.getEntryManager().removeOrphanedEntry(this.entryId, messageId));
+                    exists.complete(false);
+                }
+                else if (e instanceof ErrorResponseException || e instanceof PermissionException)
+                {   // the message cannot be read, skip the action as it cannot be displayed
+                    exists.complete(false);
+                }
+                else
+                {
+                    exists.completeExceptionally(e);
+                }
+            });
+        }
+        catch (PermissionException e)
+        {
+            exists.complete(false);
+        }
+        return exists.thenCompose(found -> found ? this.withGuild(action) : CompletableFuture.completedFuture(null));
+    }
+
+    private void repeat(Guild guild)
     {
         if (this.recurrence.shouldRepeat(this.start)) // find next repeat date and edit the message
         {
@@ -471,15 +609,16 @@ public class ScheduleEntry
             ZonedDateTime expire = this.recurrence.getExpire();
             if (expire != null && expire.isBefore(this.getStart()))
             {
-                Main.getEntryManager().removeEntry(this.entryId);
-                MessageUtilities.deleteMsg(message, null);
+                Main.getEntryManager().removeEntry(this.entryId, this.msgId);
+                MessageUtilities.deleteMsgById(guild.getTextChannelById(this.chanId), this.msgId, null);
                 return;
             }
 
             // reload time-dependent announcements
             this.regenerateAnnouncementOverrides();
-            this.reloadReminders(Main.getScheduleManager().getReminders(this.chanId));
-            this.reloadEndReminders(Main.getScheduleManager().getEndReminders(this.chanId));
+            ScheduleSettings settings = Main.getScheduleManager().getSettings(this.chanId);
+            this.reloadReminders(new ArrayList<>(settings.getReminders()));
+            this.reloadEndReminders(new ArrayList<>(settings.getEndReminders()));
 
             // clear rsvp members list and reload reminders
             this.rsvpMembers = new HashMap<>();
@@ -489,53 +628,32 @@ public class ScheduleEntry
         }
         else // otherwise remove entry and delete the message
         {
-            MessageUtilities.deleteMsg(message, null);
-            Main.getEntryManager().removeEntry(this.entryId);
+            MessageUtilities.deleteMsgById(guild.getTextChannelById(this.chanId), this.msgId, null);
+            Main.getEntryManager().removeEntry(this.entryId, this.msgId);
         }
     }
 
 
     /**
-     * processes a channel identifier (either a channel name or snowflake ID) into a valid channel
-     * and sends an event announcement
+     * sends an event announcement to the channels designated by a channel identifier
+     * (either a channel name or snowflake ID), identifiers are resolved through the schedule manager's cache,
+     * if the schedule coalesces announcements the announcement is combined with others sent to the channel
      */
-    private void makeAnnouncement(Message message, String content, String target)
+    private void makeAnnouncement(Guild guild, String content, String target)
     {
-        // don't send to any announcement if target is null
-        if (target != null)
+        boolean coalesce = Main.getScheduleManager().isCoalescingAnnouncements(this.chanId);
+        for (String channelId : Main.getScheduleManager().resolveAnnouncementTargets(guild, target))
         {
-            boolean success = false;
+            TextChannel channel = guild.getTextChannelById(channelId);
+            if (channel == null) continue;
 
-            // the identifier is an all digits sting,
-            // treat the identifier as a snowflake (channel) ID
-            if(target.matches("([c])?\\d+"))
+            if (coalesce)
             {
-                try
-                {
-                    TextChannel channel = message.getGuild().getTextChannelById(target);
-                    if (channel != null)
-                    {
-                        MessageUtilities.sendMsg(content, channel, null);
-                        success = true;
-                    }
-                }
-                catch (PermissionException ignored)
-                { /* dont care */}
-                catch (Exception e)
-                {
-                    Logging.warn(this.getClass(), "Error when sending announcement: "+e.getMessage());
-                }
+                Main.getEntryManager().getAnnouncementCoalescer().add(channel, content);
             }
-
-            // if the announcement has not sent using the identifier as a snowflake,
-            // treat the identifier as a channel name
-            if (!success && !target.isEmpty())
+            else
             {
-                List<TextChannel> channels = message.getGuild().getTextChannelsByName(target, true);
-                for (TextChannel chan : channels)
-                {
-                    MessageUtilities.sendMsg(content, chan, null);
-                }
+                MessageUtilities.sendMsg(content, channel, null);
             }
         }
     }
@@ -543,12 +661,29 @@ public class ScheduleEntry
 
     /**
      * Edits the displayed Message to indicate the time remaining until
-     * the entry is scheduled to begin/end
+     * the entry is scheduled to begin/end,
+     * nothing is done if the regenerated display is identical to the display last rendered,
+     * which is compared against the fingerprint stored in the entry's document (so renders by other instances count),
+     * if the message no longer exists the entry is removed
      */
     void reloadDisplay()
     {
-        this.getMessageObject((message)->
-                MessageUtilities.editMsg(MessageGenerator.generate(this, message), message, null));
+        MessageEditData edit = MessageGenerator.generateEdit(this);
+        String hash = MessageGenerator.fingerprint(this.msgId, edit.getEmbeds(), edit.getContent());
+        if (hash.equals(this.renderHash)) return;
+
+        JDA jda = Main.getShardManager().getJDA(this.guildId);
+        TextChannel channel = jda == null ? null : jda.getTextChannelById(this.chanId);
+        String messageId = this.msgId;
+        Executor database = Main.getEntryManager().getDatabaseExecutor();
+        MessageUtilities.editMsgById(edit, channel, messageId, edited -> database.execute(() ->
+        {
+            // recorded in the persisted snapshot as well, so that updateEntry() does not write it again
+            this.renderHash = hash;
+            if (this.persisted != null) this.persisted.put("render_hash", new BsonString(hash));
+            Main.getDBDriver().getEventCollection()
+                    .updateOne(eq("_id", this.entryId), set("render_hash", hash));
+        }), () -> database.execute(() -> Main.getEntryManager().removeOrphanedEntry(this.entryId, messageId)));
     }
 
 
@@ -601,8 +736,9 @@ public class ScheduleEntry
             return false;
 
         Emoji emote = event.getReaction().getEmoji();
-        Map<String, String> options = Main.getScheduleManager().getRSVPOptions(this.getChannelId());
-        String clearEmoji = Main.getScheduleManager().getRSVPClear(this.getChannelId());
+        ScheduleSettings settings = Main.getScheduleManager().getSettings(this.chanId);
+        Map<String, String> options = settings.getRSVPOptions();
+        String clearEmoji = settings.getRSVPClear();
 
         boolean emoteIsRSVP = false;
         String emoteKey = "";
@@ -624,42 +760,39 @@ public class ScheduleEntry
         // only if options contained the emote's name or ID
         if(emoteIsRSVP)
         {
-            String logging = Main.getScheduleManager().getRSVPLogging(chanId);
+            String logging = settings.getRSVPLogging();
+            String userId = event.getUser().getId();
+            RsvpAccumulator accumulator = Main.getEntryManager().getRsvpAccumulator();
             if(emoteKey.equals(clearEmoji))
             {
                 // remove the user from groups
                 boolean atLeastOne = false;
-                for(String group : options.values())
+                synchronized (this)
                 {
-                    Set<String> members = this.getRsvpMembersOfType(group);
-                    if (members.contains(event.getUser().getId()))
+                    for(String group : options.values())
                     {
-                        members.remove(event.getUser().getId());
-                        this.setRsvpMembers(group, members);
-                        atLeastOne = true;
-                    }
-                }
-
-                if(atLeastOne)  // if the user was removed from at least one group
-                {
-                    // send rsvp rescinded confirmation to the user
-                    if (Main.getScheduleManager().isRSVPConfirmationsEnabled(chanId))
-                    {
-                        String content = "You have rescinded your RSVP(s) for **" + this.getTitle() + "**";
-                        MessageUtilities.sendPrivateMsg(content, event.getUser(), null);
+                        Set<String> members = this.getRsvpMembersOfType(group);
+                        if (members.contains(userId))
+                        {
+                            members.remove(userId);
+                            this.setRsvpMembers(group, members);
+                            atLeastOne = true;
+                        }
                     }
 
-                    // log the rsvp action
-                    if (!logging.isEmpty() && logging.matches("\\d+"))
+                    if(atLeastOne)
                     {
-                        String content = "<@" + event.getUser().getId() + "> has rescinded their RSVP(s) for **" +
+                        // queue the update, the rsvp action is logged and confirmed once the update is written
+                        String content = "<@" + userId + "> has rescinded their RSVP(s) for **" +
                                 this.getTitle() + "** - :id: **" + ParsingUtilities.intToEncodedID(this.getId()) + "**";
-                        TextChannel loggingChannel = event.getJDA().getTextChannelById(logging);
-                        if (loggingChannel != null)
-                            MessageUtilities.sendMsg(content, loggingChannel, null);
+                        Collection<String> groups = options.values();
+                        Runnable confirmation = !settings.isRSVPConfirmationsEnabled() ? null : () ->
+                                MessageUtilities.sendPrivateMsg("You have rescinded your RSVP(s) for **" +
+                                        this.getTitle() + "**", event.getUser(), null);
+                        accumulator.record(this, RsvpAccumulator.leave(this.entryId, groups, userId),
+                                entry -> groups.stream().noneMatch(group -> entry.getRsvpMembersOfType(group).contains(userId)),
+                                logging, content, confirmation);
                     }
-
-                    Main.getEntryManager().updateEntry(this, false);
                 }
             }
             else
@@ -667,56 +800,46 @@ public class ScheduleEntry
                 // get the name of the rsvp group
                 String name = options.get(emoteKey);
 
-                // if the rsvp group is full, do nothing
-                if (!this.isFull(name))
+                boolean hasChangedRSVP = false;
+                synchronized (this)
                 {
-                    // add the user to the rsvp type
+                    // if the rsvp group is full, do nothing
                     Set<String> members = this.getRsvpMembersOfType(name);
-                    if (!members.contains(event.getUser().getId()))
+                    if (!this.isFull(name) && !members.contains(userId))
                     {
-                        members.add(event.getUser().getId());
+                        // add the user to the rsvp type
+                        members.add(userId);
                         this.setRsvpMembers(name, members);
 
                         // remove the user from any other rsvp lists for that event if exclusivity is enabled
-                        boolean hasChangedRSVP = false;
-                        if (Main.getScheduleManager().isRSVPExclusive(event.getChannel().getId()))
+                        Collection<String> others = settings.isRSVPExclusive() ?
+                                options.values() : Collections.emptyList();
+                        for(String group : others)
                         {
-                            for(String group : options.values())
+                            if (!group.equals(name))
                             {
-                                if (!group.equals(name))
+                                members = this.getRsvpMembersOfType(group);
+                                if (members.contains(userId))
                                 {
-                                    members = this.getRsvpMembersOfType(group);
-                                    if (members.contains(event.getUser().getId()))
-                                    {
-                                        members.remove(event.getUser().getId());
-                                        hasChangedRSVP = true;
-                                        this.setRsvpMembers(group, members);
-                                    }
+                                    members.remove(userId);
+                                    hasChangedRSVP = true;
+                                    this.setRsvpMembers(group, members);
                                 }
                             }
                         }
 
-                        // send rsvp confirmation to the user
-                        if (Main.getScheduleManager().isRSVPConfirmationsEnabled(chanId))
-                        {
-                            String content = "You " + (hasChangedRSVP ? "have changed your RSVP to":"have RSVPed") +
-                                    " ``" + name + "`` for **" + this.getTitle() + "**";
-                            MessageUtilities.sendPrivateMsg(content, event.getUser(), null);
-                        }
-
-                        // log the rsvp action
-                        if (!logging.isEmpty() && logging.matches("\\d+"))
-                        {
-                            String content = "<@" + event.getUser().getId() + "> " +
-                                    (hasChangedRSVP ? "has changed their RSVP to":"has RSVPed") +" ``" + name + "`` for **" +
-                                    this.getTitle() + "** - :id: **" + ParsingUtilities.intToEncodedID(this.getId()) + "**";
-                            TextChannel loggingChannel = event.getJDA().getTextChannelById(logging);
-                            if (loggingChannel != null)
-                                MessageUtilities.sendMsg(content, loggingChannel, null);
-                        }
-
-                        // update the event with the adjusted RSVP list
-                        Main.getEntryManager().updateEntry(this, false);
+                        // queue the update, the rsvp action is logged and confirmed once the update is written
+                        String content = "<@" + userId + "> " +
+                                (hasChangedRSVP ? "has changed their RSVP to":"has RSVPed") +" ``" + name + "`` for **" +
+                                this.getTitle() + "** - :id: **" + ParsingUtilities.intToEncodedID(this.getId()) + "**";
+                        String confirmed = "You " + (hasChangedRSVP ? "have changed your RSVP to":"have RSVPed") +
+                                " ``" + name + "`` for **" + this.getTitle() + "**";
+                        Runnable confirmation = !settings.isRSVPConfirmationsEnabled() ? null : () ->
+                                MessageUtilities.sendPrivateMsg(confirmed, event.getUser(), null);
+                        accumulator.record(this,
+                                RsvpAccumulator.join(this.entryId, name, userId, this.getRsvpLimit(name), others),
+                                entry -> entry.getRsvpMembersOfType(name).contains(userId),
+                                logging, content, confirmation);
                     }
                 }
             }
@@ -768,6 +891,60 @@ public class ScheduleEntry
         return (limit > -1) && (size >= limit);
     }
 
+    /**
+     * the instant at which the entry next has an action to process,
+     * the earliest of its special announcements, start (or end) and reminders (or end reminders)
+     */
+    public Instant getNextActionTime()
+    {
+        return this.nextActions().values().stream().min(Instant::compareTo).orElse(null);
+    }
+
+    /**
+     * the type of the entry's next action,
+     * if several actions are already due the first in order special, end, start, remind is returned
+     */
+    ActionType getNextAction()
+    {
+        Instant now = Instant.now();
+        ActionType next = null;
+        Instant nextTime = null;
+        for (Map.Entry<ActionType, Instant> action : this.nextActions().entrySet())
+        {   // overdue actions are all due 'now', so that ties fall back on iteration order
+            Instant time = action.getValue().isBefore(now) ? now : action.getValue();
+            if (nextTime == null || time.isBefore(nextTime))
+            {
+                next = action.getKey();
+                nextTime = time;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * helper to getNextAction() and getNextActionTime()
+     * @return earliest pending instant of each action type, in order of precedence
+     */
+    private Map<ActionType, Instant> nextActions()
+    {
+        Map<ActionType, Instant> actions = new EnumMap<>(ActionType.class);
+        this.announcements.stream().min(Date::compareTo)
+                .ifPresent(date -> actions.put(ActionType.SPECIAL, date.toInstant()));
+        if (this.hasStarted)
+        {
+            actions.put(ActionType.END, this.end.toInstant());
+            this.endReminders.stream().min(Date::compareTo)
+                    .ifPresent(date -> actions.put(ActionType.REMIND, date.toInstant()));
+        }
+        else
+        {
+            actions.put(ActionType.START, this.start.toInstant());
+            this.reminders.stream().min(Date::compareTo)
+                    .ifPresent(date -> actions.put(ActionType.REMIND, date.toInstant()));
+        }
+        return actions;
+    }
+
     public String getTitle()
     {
         return this.title;
@@ -858,6 +1035,30 @@ public class ScheduleEntry
         return this.colorCode;
     }
 
+    public String getRenderHash()
+    {
+        return this.renderHash;
+    }
+
+    ScheduleEntry setRenderHash(String hash)
+    {
+        this.renderHash = hash;
+        return this;
+    }
+
+    /**
+     * @return the entry's fields as last read from or written to the database, or null if never read
+     */
+    BsonDocument getPersisted()
+    {
+        return this.persisted;
+    }
+
+    void setPersisted(BsonDocument persisted)
+    {
+        this.persisted = persisted;
+    }
+
     public String getGoogleId()
     {
         return this.googleId;
@@ -877,16 +1078,16 @@ public class ScheduleEntry
     }
 
     /**
-     * retrieves an rsvp category's list of members
+     * retrieves an rsvp category's list of members, in the order they rsvp'ed
      */
     public Set<String> getRsvpMembersOfType(String type)
     {
         List<String> members = this.rsvpMembers.getOrDefault(type, null);
         if(members == null)
         {
-            return new HashSet<>();
+            return new LinkedHashSet<>();
         }
-        return new HashSet<>(members);
+        return new LinkedHashSet<>(members);
     }
 
     /**
@@ -988,43 +1189,31 @@ public class ScheduleEntry
     }
 
     /**
-     * Attempts to retrieve the discord Message, if the message does not exist
-     * (or the bot can for any other reason cannot retrieve it) the method returns null
-     * @return (Message) if exists, otherwise null
+     * Retrieves the discord Message without blocking, only for the rare cases which need the message's state
+     * (the message is otherwise edited, deleted and reacted to by ID)
+     * @return future of the Message, completed with null if the message (or its channel) no longer exists
+     * or cannot be read, other failures (ie. network errors) complete the future exceptionally
      */
-    public Message getMessageObject()
+    public CompletableFuture<Message> retrieveMessage()
     {
-        Message msg;
+        JDA jda = Main.getShardManager().getJDA(this.guildId);
+        TextChannel channel = jda == null ? null : jda.getTextChannelById(this.chanId);
+        if (channel == null || this.msgId == null) return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Message> future = new CompletableFuture<>();
         try
         {
-            JDA jda = Main.getShardManager().isSharding() ?
-                    Main.getShardManager().getShard(guildId) : Main.getShardManager().getJDA();
-            msg = jda.getTextChannelById(this.chanId)
-                    .retrieveMessageById(this.msgId)
-                    .complete();
-        }
-        catch (Exception e)
-        {
-            msg = null;
+            channel.retrieveMessageById(this.msgId).queue(future::complete, e ->
+            {
+                if (e instanceof ErrorResponseException || e instanceof PermissionException) future.complete(null);
+                else future.completeExceptionally(e);
+            });
         }
-        return msg;
-    }
-
-    /**
-     * Attempts to retrieve the discord Message, if the message does not exist
-     * (or the bot can for any other reason cannot retrieve it) the method returns null
-     * @return (Message) if exists, otherwise null
-     */
-    public void getMessageObject(Consumer<Message> success)
-    {
-        JDA jda = Main.getShardManager().isSharding() ?
-                Main.getShardManager().getShard(guildId) : Main.getShardManager().getJDA();
-        TextChannel channel = jda.getTextChannelById(this.chanId);
-        if (channel != null)
+        catch (PermissionException e)
         {
-            channel.retrieveMessageById(this.msgId)
-                    .queue(success);
+            future.complete(null);
         }
+        return future;
     }
 
     /*
@@ -1267,17 +1456,17 @@ public class ScheduleEntry
     }
 
     /**
-     * set the full mapping of rsvp'ed members
+     * set the full mapping of rsvp'ed members, duplicates are dropped and the order is kept
      */
     public ScheduleEntry setRsvpMembers(String type, Collection<String> members)
     {
         if(this.rsvpMembers.containsKey(type))
         {
-            this.rsvpMembers.replace(type, new ArrayList<>(new HashSet<>(members)));
+            this.rsvpMembers.replace(type, new ArrayList<>(new LinkedHashSet<>(members)));
         }
         else
         {
-            this.rsvpMembers.put(type, new ArrayList<>(new HashSet<>(members)));
+            this.rsvpMembers.put(type, new ArrayList<>(new LinkedHashSet<>(members)));
         }
         return this;
     }
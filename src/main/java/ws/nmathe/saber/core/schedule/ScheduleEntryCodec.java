@@ -0,0 +1,290 @@
+package ws.nmathe.saber.core.schedule;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.core.ShardManager;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Codec for entries of the events collection, the one serialization of a ScheduleEntry.
+ * Entries are decoded straight from the BSON read off the wire, the raw bytes of the document are kept
+ * by the entry as its persisted snapshot (used to find the fields which changed on update).
+ * Fields owned by other components (ie. leases) are neither decoded nor encoded.
+ */
+public class ScheduleEntryCodec implements Codec<ScheduleEntry>
+{
+    private static final RawBsonDocumentCodec RAW_CODEC = new RawBsonDocumentCodec();
+
+    @Override
+    public ScheduleEntry decode(BsonReader reader, DecoderContext decoderContext)
+    {
+        RawBsonDocument document = RAW_CODEC.decode(reader, decoderContext);
+        return document.decode((Decoder<ScheduleEntry>) (documentReader, context) ->
+                new ScheduleEntry(documentReader, document));
+    }
+
+    @Override
+    public void encode(BsonWriter writer, ScheduleEntry se, EncoderContext encoderContext)
+    {
+        writer.writeStartDocument();
+        if (se.getId() != null) writer.writeInt32("_id", se.getId());
+        writeString(writer, "title", se.getTitle());
+        writeDate(writer, "start", se.getStart());
+        writeDate(writer, "end", se.getEnd());
+        writeStrings(writer, "comments", se.getComments());
+        writeInteger(writer, "recurrence", se.getRepeat());
+        writeDates(writer, "reminders", se.getReminders());
+        writeDates(writer, "end_reminders", se.getEndReminders());
+        writeString(writer, "url", se.getTitleUrl());
+        writer.writeBoolean("hasStarted", se.hasStarted());
+        writeString(writer, "messageId", se.getMessageId());
+        writeString(writer, "channelId", se.getChannelId());
+        writeString(writer, "googleId", se.getGoogleId());
+
+        // rsvp
+        writer.writeStartDocument("rsvp_members");
+        for (Map.Entry<String, List<String>> group : se.getRsvpMembers().entrySet())
+        {
+            writeStrings(writer, group.getKey(), group.getValue());
+        }
+        writer.writeEndDocument();
+        writer.writeStartDocument("rsvp_limits");
+        for (Map.Entry<String, Integer> limit : se.getRsvpLimits().entrySet())
+        {
+            writeInteger(writer, limit.getKey(), limit.getValue());
+        }
+        writer.writeEndDocument();
+        writeDate(writer, "deadline", se.getDeadline());
+
+        // toggles
+        writer.writeBoolean("start_disabled", se.isQuietStart());
+        writer.writeBoolean("end_disabled", se.isQuietEnd());
+        writer.writeBoolean("reminders_disabled", se.isQuietRemind());
+
+        // recurrence
+        writeDate(writer, "expire", se.getExpire());
+        writeDate(writer, "orig_start", se.getRecurrence().getOriginalStart());
+        writeInteger(writer, "count", se.getRecurrence().getCount());
+
+        // urls
+        writeString(writer, "image", se.getImageUrl());
+        writeString(writer, "thumbnail", se.getThumbnailUrl());
+
+        // sharding
+        writeString(writer, "guildId", se.getGuildId());
+        writer.writeInt32("shard", ShardManager.getShardId(se.getGuildId()));
+        writer.writeInt32("shard_total", Main.getBotSettingsManager().getShardTotal());
+
+        // announcement overrides
+        writeDates(writer, "announcements", se.getAnnouncements());
+        writer.writeStartDocument("announcement_dates");
+        for (Map.Entry<String, Date> date : se.getAnnouncementDates().entrySet())
+        {
+            writeDate(writer, date.getKey(), date.getValue());
+        }
+        writer.writeEndDocument();
+        writeStringMap(writer, "announcement_times", se.getAnnouncementTimes());
+        writeStringMap(writer, "announcement_messages", se.getAnnouncementMessages());
+        writeStringMap(writer, "announcement_targets", se.getAnnouncementTargets());
+
+        // misc
+        writeString(writer, "location", se.getLocation());
+        writeString(writer, "description", se.getDescription());
+        writeString(writer, "color", se.getColor());
+        writeString(writer, "non_embeded", se.getNonEmbededText());
+        writeString(writer, "render_hash", se.getRenderHash());
+
+        // denormalized next action, used by the entry processor's range scans
+        writeDate(writer, "next_action_at", Date.from(se.getNextActionTime()));
+        writeString(writer, "next_action", se.getNextAction().name().toLowerCase());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<ScheduleEntry> getEncoderClass()
+    {
+        return ScheduleEntry.class;
+    }
+
+    /**
+     * @return the entry's document, as it would be written to the events collection
+     */
+    static BsonDocument toBsonDocument(ScheduleEntry se)
+    {
+        BsonDocument document = new BsonDocument();
+        new ScheduleEntryCodec().encode(new BsonDocumentWriter(document), se, EncoderContext.builder().build());
+        return document;
+    }
+
+    /*
+     * helpers to decode(), values of an unexpected type are skipped and read as null
+     */
+
+    static String readString(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() == BsonType.STRING) return reader.readString();
+        reader.skipValue();
+        return null;
+    }
+
+    static Integer readInteger(BsonReader reader)
+    {
+        switch (reader.getCurrentBsonType())
+        {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return (int) reader.readInt64();
+            case DOUBLE:
+                return (int) reader.readDouble();
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    static Boolean readBoolean(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() == BsonType.BOOLEAN) return reader.readBoolean();
+        reader.skipValue();
+        return null;
+    }
+
+    static Date readDate(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() == BsonType.DATE_TIME) return new Date(reader.readDateTime());
+        reader.skipValue();
+        return null;
+    }
+
+    static ArrayList<String> readStrings(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY)
+        {
+            reader.skipValue();
+            return null;
+        }
+        ArrayList<String> list = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String value = readString(reader);
+            if (value != null) list.add(value);
+        }
+        reader.readEndArray();
+        return list;
+    }
+
+    static List<Date> readDates(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY)
+        {
+            reader.skipValue();
+            return null;
+        }
+        List<Date> list = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            Date value = readDate(reader);
+            if (value != null) list.add(value);
+        }
+        reader.readEndArray();
+        return list;
+    }
+
+    /**
+     * reads an embedded document whose values are all read by the same function
+     */
+    static <T> Map<String, T> readMap(BsonReader reader, Map<String, T> map, Function<BsonReader, T> valueReader)
+    {
+        if (reader.getCurrentBsonType() != BsonType.DOCUMENT)
+        {
+            reader.skipValue();
+            return null;
+        }
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String key = reader.readName();
+            T value = valueReader.apply(reader);
+            if (value != null) map.put(key, value);
+        }
+        reader.readEndDocument();
+        return map;
+    }
+
+    /*
+     * helpers to encode(), null values are written as null so that updates remove the field
+     */
+
+    private static void writeString(BsonWriter writer, String name, String value)
+    {
+        if (value == null) writer.writeNull(name);
+        else writer.writeString(name, value);
+    }
+
+    private static void writeInteger(BsonWriter writer, String name, Integer value)
+    {
+        if (value == null) writer.writeNull(name);
+        else writer.writeInt32(name, value);
+    }
+
+    private static void writeDate(BsonWriter writer, String name, ZonedDateTime value)
+    {
+        writeDate(writer, name, value == null ? null : Date.from(value.toInstant()));
+    }
+
+    private static void writeDate(BsonWriter writer, String name, Date value)
+    {
+        if (value == null) writer.writeNull(name);
+        else writer.writeDateTime(name, value.getTime());
+    }
+
+    private static void writeStrings(BsonWriter writer, String name, Collection<String> values)
+    {
+        if (values == null)
+        {
+            writer.writeNull(name);
+            return;
+        }
+        writer.writeStartArray(name);
+        for (String value : values) writer.writeString(value);
+        writer.writeEndArray();
+    }
+
+    private static void writeDates(BsonWriter writer, String name, Collection<Date> values)
+    {
+        if (values == null)
+        {
+            writer.writeNull(name);
+            return;
+        }
+        writer.writeStartArray(name);
+        for (Date value : values) writer.writeDateTime(value.getTime());
+        writer.writeEndArray();
+    }
+
+    private static void writeStringMap(BsonWriter writer, String name, Map<String, String> values)
+    {
+        writer.writeStartDocument(name);
+        for (Map.Entry<String, String> value : values.entrySet())
+        {
+            writeString(writer, value.getKey(), value.getValue());
+        }
+        writer.writeEndDocument();
+    }
+}
@@ -0,0 +1,268 @@
+package ws.nmathe.saber.core.schedule;
+
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.utils.Logging;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * In-memory index of the schedule channels on the local shards, grouped by guild,
+ * and of which of those schedules have RSVP enabled.
+ * Kept current by the schedule manager as schedules are created, removed, and have RSVP toggled,
+ * and reloaded periodically to pick up changes made by other instances of the bot.
+ * Changes made while the index is reloading are replayed onto the reloaded index.
+ */
+class ScheduleIndex
+{
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State(16);
+    private volatile boolean loaded = false;
+    private List<Consumer<State>> pending = null;  // changes made while the index is being reloaded
+
+    /**
+     * (re)loads the index from the schedules on the local shards
+     */
+    void load()
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            this.pending = new ArrayList<>();
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+
+        State state;
+        try
+        {
+            List<Document> documents = new ArrayList<>();
+            Main.getDBDriver().getScheduleCollection()
+                    .find(Main.getDBDriver().onLocalShards())
+                    .projection(fields(include("_id", "guildId", "rsvp_enabled")))
+                    .into(documents);
+
+            state = new State(documents.size());
+            for (Document document : documents)
+            {
+                state.add(LongHashSet.parse(document.getString("guildId")),
+                        LongHashSet.parse(document.getString("_id")),
+                        document.getBoolean("rsvp_enabled", false));
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+            this.lock.writeLock().lock();
+            this.pending = null;
+            this.lock.writeLock().unlock();
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try
+        {
+            for (Consumer<State> change : this.pending) change.accept(state);
+            this.pending = null;
+            this.state = state;
+            this.loaded = true;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the index has been loaded and may answer queries
+     */
+    boolean isLoaded()
+    {
+        return this.loaded;
+    }
+
+    void add(String gId, String cId, boolean rsvp)
+    {
+        long guildId = LongHashSet.parse(gId);
+        long channelId = LongHashSet.parse(cId);
+        this.change(state -> state.add(guildId, channelId, rsvp));
+    }
+
+    void remove(String cId)
+    {
+        long channelId = LongHashSet.parse(cId);
+        this.change(state -> state.remove(channelId));
+    }
+
+    void removeGuild(String gId)
+    {
+        long guildId = LongHashSet.parse(gId);
+        this.change(state -> state.removeGuild(guildId));
+    }
+
+    void setRSVPEnabled(String cId, boolean value)
+    {
+        long channelId = LongHashSet.parse(cId);
+        this.change(state ->
+        {
+            if (!state.schedules.contains(channelId)) return;
+            if (value) state.rsvpEnabled.add(channelId);
+            else state.rsvpEnabled.remove(channelId);
+        });
+    }
+
+    boolean isSchedule(String cId)
+    {
+        long channelId = LongHashSet.parse(cId);
+        this.lock.readLock().lock();
+        try
+        {
+            return this.state.schedules.contains(channelId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    boolean isRSVPEnabled(String cId)
+    {
+        long channelId = LongHashSet.parse(cId);
+        this.lock.readLock().lock();
+        try
+        {
+            return this.state.rsvpEnabled.contains(channelId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    List<String> getSchedules(String gId)
+    {
+        long guildId = LongHashSet.parse(gId);
+        long[] channels;
+        this.lock.readLock().lock();
+        try
+        {
+            channels = this.state.guilds.get(guildId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        List<String> list = new ArrayList<>();
+        if (channels != null)
+        {
+            for (long channelId : channels) list.add(Long.toString(channelId));
+        }
+        return list;
+    }
+
+    int getScheduleCount(String gId)
+    {
+        long guildId = LongHashSet.parse(gId);
+        this.lock.readLock().lock();
+        try
+        {
+            long[] channels = this.state.guilds.get(guildId);
+            return channels == null ? 0 : channels.length;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void change(Consumer<State> change)
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            change.accept(this.state);
+            if (this.pending != null) this.pending.add(change);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * contents of the index, the per-guild arrays are replaced rather than modified
+     * so they may be read outside of the lock
+     */
+    private static class State
+    {
+        private final LongHashSet schedules;
+        private final LongHashSet rsvpEnabled;
+        private final Map<Long, long[]> guilds = new HashMap<>();
+
+        State(int expected)
+        {
+            this.schedules = new LongHashSet(expected);
+            this.rsvpEnabled = new LongHashSet(expected);
+        }
+
+        void add(long guildId, long channelId, boolean rsvp)
+        {
+            if (guildId == 0 || channelId == 0) return;
+            if (rsvp) this.rsvpEnabled.add(channelId);
+            else this.rsvpEnabled.remove(channelId);
+            if (this.schedules.contains(channelId)) return;
+
+            this.schedules.add(channelId);
+            long[] channels = this.guilds.get(guildId);
+            if (channels == null)
+            {
+                channels = new long[]{channelId};
+            }
+            else
+            {
+                channels = Arrays.copyOf(channels, channels.length + 1);
+                channels[channels.length - 1] = channelId;
+            }
+            this.guilds.put(guildId, channels);
+        }
+
+        void remove(long channelId)
+        {
+            if (!this.schedules.contains(channelId)) return;
+            this.schedules.remove(channelId);
+            this.rsvpEnabled.remove(channelId);
+
+            Iterator<Map.Entry<Long, long[]>> iterator = this.guilds.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<Long, long[]> entry = iterator.next();
+                long[] channels = entry.getValue();
+                long[] remaining = Arrays.stream(channels).filter(id -> id != channelId).toArray();
+                if (remaining.length == channels.length) continue;
+
+                if (remaining.length == 0) iterator.remove();
+                else entry.setValue(remaining);
+                return;
+            }
+        }
+
+        void removeGuild(long guildId)
+        {
+            long[] channels = this.guilds.remove(guildId);
+            if (channels == null) return;
+            for (long channelId : channels)
+            {
+                this.schedules.remove(channelId);
+                this.rsvpEnabled.remove(channelId);
+            }
+        }
+    }
+}
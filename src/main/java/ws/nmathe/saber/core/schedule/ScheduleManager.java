@@ -1,9 +1,13 @@
 package ws.nmathe.saber.core.schedule;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Guild;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.exceptions.PermissionException;
@@ -11,6 +15,7 @@ import net.dv8tion.jda.api.managers.channel.concrete.TextChannelManager;
 
 import org.bson.Document;
 import ws.nmathe.saber.Main;
+import ws.nmathe.saber.core.ShardManager;
 import ws.nmathe.saber.utils.Logging;
 
 import java.time.*;
@@ -36,6 +41,35 @@ public class ScheduleManager
     private Set<String> locks = new HashSet<>(); // locks channels from running multiple sorts simultaneously
     private Integer MAX_SIZE_TO_SYNC = 15;  // do not sort schedules more than this number of events
 
+    // snapshots of schedule settings, expired after a while so that changes made by other instances are picked up
+    private LoadingCache<String, ScheduleSettings> settingsCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build(new CacheLoader<String, ScheduleSettings>()
+            {
+                @Override
+                public ScheduleSettings load(String cId)
+                {
+                    return new ScheduleSettings(Main.getDBDriver().getScheduleCollection().find(eq("_id", cId)).first());
+                }
+            });
+
+    // schedule channels on the local shards, by guild
+    private ScheduleIndex index = new ScheduleIndex();
+
+    // announcement targets resolved to channel IDs, by guild
+    private AnnouncementTargets targets = new AnnouncementTargets();
+
+    /**
+     * loads the index of schedule channels, and reloads it periodically
+     * should be called once the database driver is ready
+     */
+    public void load()
+    {
+        ScheduledExecutorService indexLoader = Executors.newSingleThreadScheduledExecutor();
+        indexLoader.scheduleWithFixedDelay(this.index::load, 0, 10, TimeUnit.MINUTES);
+    }
+
     /**
      * starts a scheduled thread responsible for synchronizing channels with their linked google calendar counterparts
      * init() need not be called if the bot has not been configured to use a google service account
@@ -149,6 +183,8 @@ public class ScheduleManager
         Document schedule =
                 new Document("_id", channelId)
                         .append("guildId", guildId)
+                        .append("shard", ShardManager.getShardId(guildId))
+                        .append("shard_total", Main.getBotSettingsManager().getShardTotal())
                         .append("announcement_channel", Main.getBotSettingsManager().getAnnounceChan())
                         .append("announcement_format", Main.getBotSettingsManager().getAnnounceFormat())
                         .append("clock_format", Main.getBotSettingsManager().getClockFormat())
@@ -164,6 +200,8 @@ public class ScheduleManager
                         .append("rsvp_options", default_rsvp);
 
         Main.getDBDriver().getScheduleCollection().insertOne(schedule);
+        this.invalidate(channelId);
+        this.index.add(guildId, channelId, false);
     }
 
     /**
@@ -193,8 +231,9 @@ public class ScheduleManager
             Logging.exception(this.getClass(), e);
         }
 
-        Main.getDBDriver().getEventCollection().deleteMany(eq("channelId", cId));
+        Main.getEntryManager().removeEntries(eq("channelId", cId));
         Main.getDBDriver().getScheduleCollection().deleteOne(eq("_id", cId));
+        this.forget(cId);
     }
 
     /**
@@ -204,8 +243,8 @@ public class ScheduleManager
      */
     public boolean isSchedule(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        return settings != null;
+        if (this.index.isLoaded()) return this.index.isSchedule(cId);
+        return this.getSettings(cId).exists();
     }
 
     /**
@@ -215,7 +254,8 @@ public class ScheduleManager
      */
     public boolean isLimitReached(String gId)
     {
-        long count = Main.getDBDriver().getScheduleCollection().count(eq("guildId",gId));
+        long count = this.isIndexed(gId) ? this.index.getScheduleCount(gId) :
+                Main.getDBDriver().getScheduleCollection().count(eq("guildId",gId));
         return Main.getBotSettingsManager().getMaxSchedules() < count;
     }
 
@@ -286,54 +326,37 @@ public class ScheduleManager
             MessageChannel chan = jda.getTextChannelById(cId);
             chan.sendTyping().queue();
 
-            int sortOrder = 1;
-            if(reverseOrder)
-                sortOrder = -1;
-
-            LinkedList<ScheduleEntry> unsortedEntries = new LinkedList<>();
-            Main.getDBDriver().getEventCollection().find(eq("channelId", cId))
-                    .sort(new Document("start", sortOrder))
-                    .forEach((Consumer<? super Document>) document -> unsortedEntries.add(new ScheduleEntry(document)));
+            // the entries in display order
+            List<EntrySummary> entries = new ArrayList<>();
+            Main.getEntryManager().getSummariesFromChannel(cId).forEach(entries::add);
+            if (reverseOrder) Collections.reverse(entries);
+
+            // the entries' messages in order of creation, message IDs are snowflakes which order by creation time
+            List<String> messageIds = entries.stream()
+                    .map(EntrySummary::getMessageId)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingLong(Long::parseLong))
+                    .collect(Collectors.toList());
+            if (messageIds.size() != entries.size()) return;
+
+            // assign the n-th oldest message to the n-th entry
+            List<Integer> moved = new ArrayList<>();
+            List<WriteModel<Document>> updates = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++)
+            {
+                EntrySummary entry = entries.get(i);
+                if (messageIds.get(i).equals(entry.getMessageId())) continue;
+                moved.add(entry.getId());
+                updates.add(new UpdateOneModel<>(eq("_id", entry.getId()), set("messageId", messageIds.get(i))));
+            }
+            if (updates.isEmpty()) return;
+            Main.getDBDriver().getEventCollection().bulkWrite(updates);
 
-            // selection sort the entries by timestamp
-            while (!unsortedEntries.isEmpty())
+            // reload the displays of the entries which moved
+            for (Integer entryId : moved)
             {
                 chan.sendTyping().queue();   // continue to send 'is typing'
-
-                ScheduleEntry top = unsortedEntries.pop();
-                ScheduleEntry min = top;
-                for (ScheduleEntry cur : unsortedEntries)
-                {
-                    Message minMsg = min.getMessageObject();
-                    Message topMsg = cur.getMessageObject();
-                    if (minMsg!=null && topMsg!=null)
-                    {
-                        OffsetDateTime a = minMsg.getTimeCreated();
-                        OffsetDateTime b = topMsg.getTimeCreated();
-                        if (a.isAfter(b))
-                        {
-                            min = cur;
-                        }
-                    }
-
-                }
-                // swap messages and update db
-                if (!(min==top))
-                {
-                    Message tmp = top.getMessageObject();
-                    top.setMessageObject(min.getMessageObject());
-                    Main.getDBDriver().getEventCollection().updateOne(
-                            eq("_id", top.getId()),
-                            new Document("$set", new Document("messageId", min.getMessageObject().getId())));
-
-                    min.setMessageObject(tmp);
-                    Main.getDBDriver().getEventCollection().updateOne(
-                            eq("_id", min.getId()),
-                            new Document("$set", new Document("messageId", tmp.getId())));
-                }
-
-                // reload display
-                top.reloadDisplay();
+                Main.getEntryManager().reloadEntry(entryId);
             }
         }
         catch(PermissionException e)
@@ -360,76 +383,48 @@ public class ScheduleManager
 
     public boolean isRSVPEnabled(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-        return settings.getBoolean("rsvp_enabled", false);
+        if (this.index.isLoaded()) return this.index.isRSVPEnabled(cId);
+        return this.getSettings(cId).isRSVPEnabled();
     }
 
     public boolean isRSVPConfirmationsEnabled(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-        return settings.getBoolean("rsvp_confirmations", false);
+        return this.getSettings(cId).isRSVPConfirmationsEnabled();
     }
 
     public boolean isEndFormatOverridden(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-
-        String format = (String) settings.get("announcement_format_end");
-        return !(format == null);
+        return this.getSettings(cId).isEndFormatOverridden();
     }
 
     public boolean isEndChannelOverridden(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-
-        String format = (String) settings.get("announcement_channel_end");
-        return !(format == null);
+        return this.getSettings(cId).isEndChannelOverridden();
     }
 
     public boolean isRemindFormatOverridden(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-
-        String format = (String) settings.get("reminder_format");
-        return !(format == null);
+        return this.getSettings(cId).isRemindFormatOverridden();
     }
 
     public boolean isRemindChanOverridden(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return false;
-        }
-
-        String format = (String) settings.get("reminder_channel");
-        return !(format == null);
+        return this.getSettings(cId).isRemindChanOverridden();
     }
 
     public boolean isRSVPExclusive(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id", cId)).first();
-        return settings == null || settings.getBoolean("rsvp_exclusivity", true);
+        return this.getSettings(cId).isRSVPExclusive();
+    }
+
+    public boolean isTimeZoneSync(String cId)
+    {
+        return this.getSettings(cId).isTimeZoneSync();
+    }
+
+    public boolean isCoalescingAnnouncements(String cId)
+    {
+        return this.getSettings(cId).isCoalescingAnnouncements();
     }
 
     /*
@@ -437,8 +432,82 @@ public class ScheduleManager
      * Should never return null
      */
 
+    /**
+     * retrieves the snapshot of a schedule's settings,
+     * snapshots are cached and are invalidated whenever the settings are changed through the setters
+     * @param cId (String) ID of channel / schedule (synonymous)
+     * @return the settings, never null (defaults are used if the schedule does not exist)
+     */
+    public ScheduleSettings getSettings(String cId)
+    {
+        return this.settingsCache.getUnchecked(cId);
+    }
+
+    /**
+     * discards the cached settings of a schedule,
+     * should be used after any write to a schedule document which does not go through the setters
+     * @param cId (String) ID of channel / schedule (synonymous)
+     */
+    public void invalidate(String cId)
+    {
+        this.settingsCache.invalidate(cId);
+    }
+
+    /**
+     * discards everything held in memory for a schedule which has been removed from the database
+     * @param cId (String) channel ID
+     */
+    public void forget(String cId)
+    {
+        this.settingsCache.invalidate(cId);
+        this.index.remove(cId);
+    }
+
+    /**
+     * discards everything held in memory for the schedules of a guild which have been removed from the database
+     * @param gId (String) guild ID
+     */
+    public void forgetGuild(String gId)
+    {
+        this.settingsCache.asMap().values().removeIf(settings -> gId.equals(settings.getGuildId()));
+        this.index.removeGuild(gId);
+        this.targets.invalidate(gId);
+    }
+
+    /**
+     * resolves an announcement target, resolutions are cached until a channel of the guild changes
+     * @param guild the guild to announce in
+     * @param target a channel ID or channel name (may be null)
+     * @return IDs of the channels to announce to
+     */
+    public List<String> resolveAnnouncementTargets(Guild guild, String target)
+    {
+        return this.targets.resolve(guild, target);
+    }
+
+    /**
+     * discards the resolved announcement targets of a guild,
+     * should be used whenever a channel of the guild is created, renamed, or deleted
+     * @param gId (String) guild ID
+     */
+    public void invalidateAnnouncementTargets(String gId)
+    {
+        this.targets.invalidate(gId);
+    }
+
+    /**
+     * @param gId (String) guild ID
+     * @return true if the schedules of the guild may be taken from the index
+     */
+    private boolean isIndexed(String gId)
+    {
+        return this.index.isLoaded() && ShardManager.getLocalShardIds().contains(ShardManager.getShardId(gId));
+    }
+
     public List<String> getSchedulesForGuild(String gId)
     {
+        if (this.isIndexed(gId)) return this.index.getSchedules(gId);
+
         List<String> list = new ArrayList<>();
         for (Document document : Main.getDBDriver().getScheduleCollection().find(eq("guildId", gId)))
         {
@@ -449,319 +518,102 @@ public class ScheduleManager
 
     public String getStartAnnounceChan(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceChan();
-        }
-        String channel = settings.getString("announcement_channel");
-        if(channel == null)
-        {
-            return Main.getBotSettingsManager().getAnnounceChan();
-        }
-        return channel;
+        return this.getSettings(cId).getStartAnnounceChan();
     }
 
     public String getStartAnnounceFormat(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceFormat();
-        }
-        String format = settings.getString("announcement_format");
-        if(format == null)
-        {
-            return Main.getBotSettingsManager().getAnnounceFormat();
-        }
-        return format;
+        return this.getSettings(cId).getStartAnnounceFormat();
     }
 
     public String getEndAnnounceChan(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceChan();
-        }
-        String chan = settings.getString("announcement_channel_end");
-        if(chan == null)
-        {
-            return settings.getString("announcement_channel");
-        }
-        return chan;
+        return this.getSettings(cId).getEndAnnounceChan();
     }
 
     public String getEndAnnounceFormat(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceFormat();
-        }
-        String format = settings.getString("announcement_format_end");
-        if(format == null)
-        {
-            return settings.getString("announcement_format");
-        }
-        return format;
+        return this.getSettings(cId).getEndAnnounceFormat();
     }
 
     public String getClockFormat(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getClockFormat();
-        }
-        String clock = settings.getString("clock_format");
-        if(clock == null)
-        {
-            return Main.getBotSettingsManager().getClockFormat();
-        }
-        return clock;
+        return this.getSettings(cId).getClockFormat();
     }
 
     public ZoneId getTimeZone(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return ZoneId.of(Main.getBotSettingsManager().getTimeZone());
-        }
-        ZoneId zone = ZoneId.of(settings.getString("timezone"));
-        if(zone == null)
-        {
-            return ZoneId.of(Main.getBotSettingsManager().getTimeZone());
-        }
-        return zone;
+        return this.getSettings(cId).getTimeZone();
     }
 
     public List<ZoneId> getAltZones(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return new ArrayList<>();
-        }
-        List<String> zones = (List<String>) settings.get("alt_zones");
-        if(zones == null)
-        {
-            return new ArrayList<>();
-        }
-        return zones.stream().map(ZoneId::of).collect(Collectors.toList());
+        return new ArrayList<>(this.getSettings(cId).getAltZones());
     }
 
     public String getAddress(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return "off";
-        }
-
-        String address = settings.getString("sync_address");
-        if(address == null)
-        {
-            return "off";
-        }
-        return address;
+        return this.getSettings(cId).getAddress();
     }
 
     public Date getSyncTime(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Date.from(ZonedDateTime.of(LocalDate.now().plusDays(1),
-                    LocalTime.MIDNIGHT, ZoneId.systemDefault()).toInstant());
-        }
-
-        Date syncTime = settings.getDate("sync_time");
-        if(syncTime == null)
-        {
-            return Date.from(ZonedDateTime.of(LocalDate.now().plusDays(1),
-                    LocalTime.MIDNIGHT, ZoneId.systemDefault()).toInstant());
-        }
-        return syncTime;
+        return this.getSettings(cId).getSyncTime();
     }
 
-    @SuppressWarnings("unchecked")
     public List<Integer> getReminders(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return new ArrayList<>();
-        }
-
-        List<Integer> reminders = (List<Integer>) settings.get("default_reminders");
-        if(reminders == null)
-        {
-            return new ArrayList<>();
-        }
-        return reminders;
+        return new ArrayList<>(this.getSettings(cId).getReminders());
     }
 
     public String getReminderChan(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceChan();
-        }
-
-        String chan_name = (String) settings.get("reminder_channel");
-        if(chan_name == null )
-        {
-            return (String) settings.get("announcement_channel");
-        }
-        return chan_name;
-
+        return this.getSettings(cId).getReminderChan();
     }
 
     public String getReminderFormat(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if( settings == null )
-        {
-            return Main.getBotSettingsManager().getAnnounceFormat();
-        }
-
-        String format = (String) settings.get("reminder_format");
-        if(format == null )
-        {
-            return (String) settings.get("announcement_format");
-        }
-        return format;
+        return this.getSettings(cId).getReminderFormat();
     }
 
     public String getStyle(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return "FULL";
-        }
-
-        String style = (String) settings.get("display_style");
-        if(style == null)
-        {
-            return "FULL";
-        }
-        return style;
+        return this.getSettings(cId).getStyle();
     }
 
     public int getSyncLength(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return 7;
-        }
-
-        Integer len = (Integer) settings.get("sync_length");
-        if(len == null)
-        {
-            return 7;
-        }
-        return len;
+        return this.getSettings(cId).getSyncLength();
     }
 
     public String getSyncUser(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return null;
-        }
-
-        String user = settings.getString("sync_user");
-        if(user == null)
-        {
-            return null;
-        }
-        return user;
+        return this.getSettings(cId).getSyncUser();
     }
 
     public int getAutoSort(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return 0;
-        }
-
-        Integer sort = (Integer) settings.get("auto_sort");
-        if(sort == null)
-        {
-            return 0;
-        }
-        return sort;
+        return this.getSettings(cId).getAutoSort();
     }
 
     public Map<String, String> getRSVPOptions(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return new HashMap<>();
-        }
-
-        Map<String, String> map = (Map) settings.get("rsvp_options");
-        if(map == null)
-        {
-            map = new LinkedHashMap<>();
-            map.put(Main.getBotSettingsManager().getYesEmoji(), "Yes");
-            map.put(Main.getBotSettingsManager().getNoEmoji(), "No");
-            map.put(Main.getBotSettingsManager().getClearEmoji(), "Undecided");
-        }
-        return map;
+        return new LinkedHashMap<>(this.getSettings(cId).getRSVPOptions());
     }
 
     public String getRSVPClear(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return "";
-        }
-        String emoji = settings.getString("rsvp_clear");
-        if(emoji == null)
-        {
-            return "";
-        }
-        return emoji;
+        return this.getSettings(cId).getRSVPClear();
     }
 
     public String getRSVPLogging(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return "";
-        }
-        String loggingChannel = settings.getString("rsvp_logging");
-        if(loggingChannel == null)
-        {
-            return "";
-        }
-        return loggingChannel;
+        return this.getSettings(cId).getRSVPLogging();
     }
 
     public List<Integer> getEndReminders(String cId)
     {
-        Document settings = Main.getDBDriver().getScheduleCollection().find(eq("_id",cId)).first();
-        if(settings == null)
-        {
-            return new ArrayList<>();
-        }
-        List<Integer> reminders = (List<Integer>) settings.get("end_reminders");
-        if(reminders == null)
-        {
-            return new ArrayList<>();
-        }
-        return reminders;
+        return new ArrayList<>(this.getSettings(cId).getEndReminders());
     }
 
     /*
@@ -774,6 +626,7 @@ public class ScheduleManager
     public void setAnnounceChan(String cId, String chan )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("announcement_channel", chan));
+        this.invalidate(cId);
     }
 
     /**
@@ -782,6 +635,7 @@ public class ScheduleManager
     public void setAnnounceFormat(String cId, String format )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("announcement_format", format));
+        this.invalidate(cId);
     }
 
     /**
@@ -790,6 +644,7 @@ public class ScheduleManager
     public void setEndAnnounceChan(String cId, String chan )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("announcement_channel_end", chan));
+        this.invalidate(cId);
     }
 
     /**
@@ -798,6 +653,16 @@ public class ScheduleManager
     public void setEndAnnounceFormat(String cId, String format )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("announcement_format_end", format));
+        this.invalidate(cId);
+    }
+
+    /**
+     * Sets whether announcements sent to the same channel at the same time are combined into one message
+     */
+    public void setCoalescingAnnouncements(String cId, boolean coalesce)
+    {
+        Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("coalesce_announcements", coalesce));
+        this.invalidate(cId);
     }
 
     /**
@@ -806,6 +671,7 @@ public class ScheduleManager
     public void setClockFormat(String cId, String clock )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("clock_format", clock));
+        this.invalidate(cId);
     }
 
     /**
@@ -814,6 +680,7 @@ public class ScheduleManager
     public void setTimeZone(String cId, ZoneId zone)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("timezone", zone.toString()));
+        this.invalidate(cId);
     }
 
     /**
@@ -831,6 +698,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("alt_zones", zones));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -839,6 +707,7 @@ public class ScheduleManager
     public void setAddress(String cId, String address)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("sync_address", address));
+        this.invalidate(cId);
     }
 
     /**
@@ -847,6 +716,7 @@ public class ScheduleManager
     public void setSyncTime(String cId, Date syncTime)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("sync_time", syncTime));
+        this.invalidate(cId);
     }
 
     /**
@@ -855,6 +725,7 @@ public class ScheduleManager
     public void setReminders(String cId, List<Integer> reminders)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("default_reminders", reminders));
+        this.invalidate(cId);
     }
 
     /**
@@ -871,6 +742,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("end_reminders", reminders));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -879,6 +751,7 @@ public class ScheduleManager
     public void setReminderChan(String cId, String chan )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("reminder_channel", chan));
+        this.invalidate(cId);
     }
 
     /**
@@ -887,6 +760,7 @@ public class ScheduleManager
     public void setReminderFormat(String cId, String format )
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("reminder_format", format));
+        this.invalidate(cId);
     }
 
     /**
@@ -895,6 +769,8 @@ public class ScheduleManager
     public void setRSVPEnable(String cId, boolean value)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("rsvp_enabled", value));
+        this.invalidate(cId);
+        this.index.setRSVPEnabled(cId, value);
     }
 
     /**
@@ -905,6 +781,7 @@ public class ScheduleManager
     public void setStyle(String cId, String style)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("display_style", style));
+        this.invalidate(cId);
     }
 
     /**
@@ -913,6 +790,7 @@ public class ScheduleManager
     public void setSyncLength(String cId, int len)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("sync_length", len));
+        this.invalidate(cId);
     }
 
     /**
@@ -922,6 +800,7 @@ public class ScheduleManager
     public void setAutoSort(String cId, int type)
     {
         Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("auto_sort", type));
+        this.invalidate(cId);
     }
 
     /**
@@ -938,6 +817,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("rsvp_options", options));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -954,6 +834,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("rsvp_clear", emoji));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -970,6 +851,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("rsvp_exclusivity", bool));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -986,6 +868,7 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("rsvp_confirmations", bool));
         }
+        this.invalidate(cId);
     }
 
     /**
@@ -1002,5 +885,24 @@ public class ScheduleManager
         {
             Main.getDBDriver().getScheduleCollection().updateOne(eq("_id", cId), set("rsvp_logging", channelIdentifier));
         }
+        this.invalidate(cId);
+    }
+
+    /**
+     * Sets whether or not a schedule's timezone should be synced with its google calendar
+     */
+    public void setTimeZoneSync(String cId, boolean value)
+    {
+        Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("timezone_sync", value));
+        this.invalidate(cId);
+    }
+
+    /**
+     * Sets the user whose google credentials are used to sync a schedule
+     */
+    public void setSyncUser(String cId, String userId)
+    {
+        Main.getDBDriver().getScheduleCollection().updateOne(eq("_id",cId), set("sync_user", userId));
+        this.invalidate(cId);
     }
 }
@@ -0,0 +1,334 @@
+package ws.nmathe.saber.core.schedule;
+
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of a schedule's settings, read from the schedule's document in a single query.
+ * Missing settings (or a missing schedule) are resolved to their defaults when the snapshot is created.
+ * Snapshots are cached by the ScheduleManager, and should be retrieved once and passed along rather than
+ * re-retrieved by each method along a render or announcement path.
+ */
+public class ScheduleSettings
+{
+    private final boolean exists;
+    private final String guildId;
+
+    // announcements
+    private final String startAnnounceChan;
+    private final String startAnnounceFormat;
+    private final String endAnnounceChan;
+    private final String endAnnounceFormat;
+    private final String reminderChan;
+    private final String reminderFormat;
+    private final boolean endFormatOverridden;
+    private final boolean endChanOverridden;
+    private final boolean remindFormatOverridden;
+    private final boolean remindChanOverridden;
+    private final List<Integer> reminders;
+    private final List<Integer> endReminders;
+    private final boolean coalesceAnnouncements;
+
+    // display
+    private final String clockFormat;
+    private final ZoneId timeZone;
+    private final List<ZoneId> altZones;
+    private final String style;
+    private final int autoSort;
+
+    // sync
+    private final String address;
+    private final Date syncTime;
+    private final int syncLength;
+    private final String syncUser;
+    private final boolean timeZoneSync;
+
+    // rsvp
+    private final boolean rsvpEnabled;
+    private final boolean rsvpConfirmations;
+    private final boolean rsvpExclusive;
+    private final Map<String, String> rsvpOptions;
+    private final String rsvpClear;
+    private final String rsvpLogging;
+
+    /**
+     * @param settings the schedule's document, or null if the schedule does not exist
+     */
+    @SuppressWarnings("unchecked")
+    ScheduleSettings(Document settings)
+    {
+        String defaultChan = Main.getBotSettingsManager().getAnnounceChan();
+        String defaultFormat = Main.getBotSettingsManager().getAnnounceFormat();
+        Date defaultSyncTime = Date.from(ZonedDateTime.of(LocalDate.now().plusDays(1),
+                LocalTime.MIDNIGHT, ZoneId.systemDefault()).toInstant());
+
+        if (settings == null)
+        {
+            this.exists = false;
+            this.guildId = null;
+            this.startAnnounceChan = defaultChan;
+            this.startAnnounceFormat = defaultFormat;
+            this.endAnnounceChan = defaultChan;
+            this.endAnnounceFormat = defaultFormat;
+            this.reminderChan = defaultChan;
+            this.reminderFormat = defaultFormat;
+            this.endFormatOverridden = false;
+            this.endChanOverridden = false;
+            this.remindFormatOverridden = false;
+            this.remindChanOverridden = false;
+            this.reminders = Collections.emptyList();
+            this.endReminders = Collections.emptyList();
+            this.coalesceAnnouncements = false;
+            this.clockFormat = Main.getBotSettingsManager().getClockFormat();
+            this.timeZone = ZoneId.of(Main.getBotSettingsManager().getTimeZone());
+            this.altZones = Collections.emptyList();
+            this.style = "FULL";
+            this.autoSort = 0;
+            this.address = "off";
+            this.syncTime = defaultSyncTime;
+            this.syncLength = 7;
+            this.syncUser = null;
+            this.timeZoneSync = false;
+            this.rsvpEnabled = false;
+            this.rsvpConfirmations = false;
+            this.rsvpExclusive = true;
+            this.rsvpOptions = Collections.emptyMap();
+            this.rsvpClear = "";
+            this.rsvpLogging = "";
+            return;
+        }
+
+        this.exists = true;
+        this.guildId = settings.getString("guildId");
+
+        String announceChan = settings.getString("announcement_channel");
+        String announceFormat = settings.getString("announcement_format");
+        this.startAnnounceChan = announceChan == null ? defaultChan : announceChan;
+        this.startAnnounceFormat = announceFormat == null ? defaultFormat : announceFormat;
+
+        String endChan = settings.getString("announcement_channel_end");
+        String endFormat = settings.getString("announcement_format_end");
+        this.endChanOverridden = endChan != null;
+        this.endFormatOverridden = endFormat != null;
+        this.endAnnounceChan = endChan == null ? announceChan : endChan;
+        this.endAnnounceFormat = endFormat == null ? announceFormat : endFormat;
+
+        String remindChan = settings.getString("reminder_channel");
+        String remindFormat = settings.getString("reminder_format");
+        this.remindChanOverridden = remindChan != null;
+        this.remindFormatOverridden = remindFormat != null;
+        this.reminderChan = remindChan == null ? announceChan : remindChan;
+        this.reminderFormat = remindFormat == null ? announceFormat : remindFormat;
+
+        List<Integer> reminders = (List<Integer>) settings.get("default_reminders");
+        this.reminders = reminders == null ? Collections.emptyList() : Collections.unmodifiableList(reminders);
+        List<Integer> endReminders = (List<Integer>) settings.get("end_reminders");
+        this.endReminders = endReminders == null ? Collections.emptyList() : Collections.unmodifiableList(endReminders);
+        this.coalesceAnnouncements = settings.getBoolean("coalesce_announcements", false);
+
+        String clock = settings.getString("clock_format");
+        this.clockFormat = clock == null ? Main.getBotSettingsManager().getClockFormat() : clock;
+        String zone = settings.getString("timezone");
+        this.timeZone = ZoneId.of(zone == null ? Main.getBotSettingsManager().getTimeZone() : zone);
+        List<String> zones = (List<String>) settings.get("alt_zones");
+        this.altZones = zones == null ? Collections.emptyList() :
+                Collections.unmodifiableList(zones.stream().map(ZoneId::of).collect(Collectors.toList()));
+        String style = settings.getString("display_style");
+        this.style = style == null ? "FULL" : style;
+        Integer sort = settings.getInteger("auto_sort");
+        this.autoSort = sort == null ? 0 : sort;
+
+        String address = settings.getString("sync_address");
+        this.address = address == null ? "off" : address;
+        Date syncTime = settings.getDate("sync_time");
+        this.syncTime = syncTime == null ? defaultSyncTime : syncTime;
+        Integer len = settings.getInteger("sync_length");
+        this.syncLength = len == null ? 7 : len;
+        this.syncUser = settings.getString("sync_user");
+        this.timeZoneSync = settings.getBoolean("timezone_sync", false);
+
+        this.rsvpEnabled = settings.getBoolean("rsvp_enabled", false);
+        this.rsvpConfirmations = settings.getBoolean("rsvp_confirmations", false);
+        this.rsvpExclusive = settings.getBoolean("rsvp_exclusivity", true);
+        Map<String, String> options = (Map<String, String>) settings.get("rsvp_options");
+        if (options == null)
+        {
+            options = new LinkedHashMap<>();
+            options.put(Main.getBotSettingsManager().getYesEmoji(), "Yes");
+            options.put(Main.getBotSettingsManager().getNoEmoji(), "No");
+            options.put(Main.getBotSettingsManager().getClearEmoji(), "Undecided");
+        }
+        this.rsvpOptions = Collections.unmodifiableMap(options);
+        String clear = settings.getString("rsvp_clear");
+        this.rsvpClear = clear == null ? "" : clear;
+        String logging = settings.getString("rsvp_logging");
+        this.rsvpLogging = logging == null ? "" : logging;
+    }
+
+    /*
+     * Getters
+     * collections are unmodifiable
+     */
+
+    public boolean exists()
+    {
+        return this.exists;
+    }
+
+    public String getGuildId()
+    {
+        return this.guildId;
+    }
+
+    public String getStartAnnounceChan()
+    {
+        return this.startAnnounceChan;
+    }
+
+    public String getStartAnnounceFormat()
+    {
+        return this.startAnnounceFormat;
+    }
+
+    public String getEndAnnounceChan()
+    {
+        return this.endAnnounceChan;
+    }
+
+    public String getEndAnnounceFormat()
+    {
+        return this.endAnnounceFormat;
+    }
+
+    public String getReminderChan()
+    {
+        return this.reminderChan;
+    }
+
+    public String getReminderFormat()
+    {
+        return this.reminderFormat;
+    }
+
+    public boolean isEndFormatOverridden()
+    {
+        return this.endFormatOverridden;
+    }
+
+    public boolean isEndChannelOverridden()
+    {
+        return this.endChanOverridden;
+    }
+
+    public boolean isRemindFormatOverridden()
+    {
+        return this.remindFormatOverridden;
+    }
+
+    public boolean isRemindChanOverridden()
+    {
+        return this.remindChanOverridden;
+    }
+
+    public List<Integer> getReminders()
+    {
+        return this.reminders;
+    }
+
+    public List<Integer> getEndReminders()
+    {
+        return this.endReminders;
+    }
+
+    public String getClockFormat()
+    {
+        return this.clockFormat;
+    }
+
+    public ZoneId getTimeZone()
+    {
+        return this.timeZone;
+    }
+
+    public List<ZoneId> getAltZones()
+    {
+        return this.altZones;
+    }
+
+    public String getStyle()
+    {
+        return this.style;
+    }
+
+    public int getAutoSort()
+    {
+        return this.autoSort;
+    }
+
+    public String getAddress()
+    {
+        return this.address;
+    }
+
+    public Date getSyncTime()
+    {
+        return this.syncTime;
+    }
+
+    public int getSyncLength()
+    {
+        return this.syncLength;
+    }
+
+    public String getSyncUser()
+    {
+        return this.syncUser;
+    }
+
+    public boolean isTimeZoneSync()
+    {
+        return this.timeZoneSync;
+    }
+
+    public boolean isCoalescingAnnouncements()
+    {
+        return this.coalesceAnnouncements;
+    }
+
+    public boolean isRSVPEnabled()
+    {
+        return this.rsvpEnabled;
+    }
+
+    public boolean isRSVPConfirmationsEnabled()
+    {
+        return this.rsvpConfirmations;
+    }
+
+    public boolean isRSVPExclusive()
+    {
+        return this.rsvpExclusive;
+    }
+
+    public Map<String, String> getRSVPOptions()
+    {
+        return this.rsvpOptions;
+    }
+
+    public String getRSVPClear()
+    {
+        return this.rsvpClear;
+    }
+
+    public String getRSVPLogging()
+    {
+        return this.rsvpLogging;
+    }
+}
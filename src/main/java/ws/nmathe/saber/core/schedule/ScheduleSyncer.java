@@ -22,7 +22,6 @@ import java.util.function.Consumer;
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Projections.fields;
 import static com.mongodb.client.model.Projections.include;
-import static com.mongodb.client.model.Updates.set;
 import static ws.nmathe.saber.Main.getGuildSettingsManager;
 
 /**
@@ -40,6 +39,7 @@ class ScheduleSyncer implements Runnable
     {
         Logging.info(this.getClass(), "Running schedule syncer. . .");
         Bson query = and(
+                        Main.getDBDriver().onLocalShards(),
                         ne("sync_address", "off"),
                         lte("sync_time", new Date()));
 
@@ -67,8 +67,7 @@ class ScheduleSyncer implements Runnable
                             Main.getScheduleManager().getTimeZone(scheduleId)).plusDays(1).toInstant());
 
                     // update schedule document with next sync time
-                    Main.getDBDriver().getScheduleCollection()
-                            .updateOne(eq("_id", scheduleId), set("sync_time", syncTime));
+                    Main.getScheduleManager().setSyncTime(scheduleId, syncTime);
 
                     // get the sync address and google credentials, then create the calendar service
                     String address = document.getString("sync_address");
@@ -0,0 +1,188 @@
+package ws.nmathe.saber.core.schedule;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bson.Document;
+import ws.nmathe.saber.Main;
+import ws.nmathe.saber.utils.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * Set of the IDs of the messages displaying entries on the local shards,
+ * used to ignore message delete and reaction events on other messages without querying the database.
+ * IDs are held unboxed in a LongHashSet.
+ * The set may contain messages which no longer belong to an entry, which only costs a query.
+ * Entries created by other instances (or whose message was replaced elsewhere) are missing until the next reload,
+ * so a miss on a schedule channel is checked against the database, and the message is tracked if it displays an entry.
+ * Misses confirmed by the database are remembered for a short while. Until it has been loaded every message is reported as tracked.
+ */
+public class TrackedMessages
+{
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongHashSet set = new LongHashSet(1024);
+    private volatile boolean loaded = false;
+    private List<Long> pending = null;   // IDs tracked while the set is being reloaded
+
+    // messages on schedule channels found not to display an entry
+    private final Cache<Long, Boolean> untracked = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * (re)loads the set from the entries on the local shards
+     */
+    void load()
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            this.pending = new ArrayList<>();
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+
+        List<Long> ids = new ArrayList<>();
+        try
+        {
+            Main.getDBDriver().getEventCollection()
+                    .find(Main.getDBDriver().onLocalShards())
+                    .projection(fields(include("messageId")))
+                    .forEach((Consumer<? super Document>) document ->
+                    {
+                        long id = LongHashSet.parse(document.getString("messageId"));
+                        if (id != 0) ids.add(id);
+                    });
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+            this.lock.writeLock().lock();
+            this.pending = null;
+            this.lock.writeLock().unlock();
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try
+        {
+            ids.addAll(this.pending);
+            this.pending = null;
+            this.set = new LongHashSet(ids.size());
+            for (long id : ids) this.set.add(id);
+            this.loaded = true;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+        Logging.info(this.getClass(), "Tracking " + this.size() + " entry messages.");
+    }
+
+    /**
+     * adds a message to the set
+     * @param messageId ID of a message displaying an entry
+     */
+    public void track(String messageId)
+    {
+        long id = LongHashSet.parse(messageId);
+        if (id == 0) return;
+
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.pending != null) this.pending.add(id);
+            this.set.add(id);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+        this.untracked.invalidate(id);
+    }
+
+    /**
+     * removes a message from the set
+     * @param messageId ID of a message which no longer displays an entry
+     */
+    public void untrack(String messageId)
+    {
+        long id = LongHashSet.parse(messageId);
+        if (id == 0) return;
+
+        this.lock.writeLock().lock();
+        try
+        {
+            this.set.remove(id);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param channelId ID of the channel the message was sent to
+     * @param messageId ID of a message
+     * @return false only if the message is known not to display an entry
+     */
+    public boolean isTracked(String channelId, String messageId)
+    {
+        if (!this.loaded) return true;
+        long id = LongHashSet.parse(messageId);
+        if (id == 0) return true;
+
+        this.lock.readLock().lock();
+        try
+        {
+            if (this.set.contains(id)) return true;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        // only schedule channels display entries
+        if (!Main.getScheduleManager().isSchedule(channelId)) return false;
+        if (this.untracked.getIfPresent(id) != null) return false;
+
+        Document entry = Main.getDBDriver().getEventCollection()
+                .find(eq("messageId", messageId))
+                .projection(fields(include("_id")))
+                .first();
+        if (entry == null)
+        {
+            this.untracked.put(id, true);
+            return false;
+        }
+        this.track(messageId);
+        return true;
+    }
+
+    /**
+     * @return number of messages in the set
+     */
+    public int size()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.set.size();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+}
@@ -1,73 +1,179 @@
 package ws.nmathe.saber.core.settings;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.model.ReplaceOptions;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import ws.nmathe.saber.Main;
 import ws.nmathe.saber.commands.general.*;
+import ws.nmathe.saber.utils.Logging;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Updates.set;
 
 /**
  * manager for guild setting options
+ * settings are cached, the setters of a cached GuildSettings object write through to the database
  */
 public class GuildSettingsManager
 {
+    // every prefix in use, reloaded from the database periodically to pick up changes made by other instances
+    private final PrefixIndex prefixIndex = new PrefixIndex();
+    private final ScheduledExecutorService prefixLoader = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("PrefixLoader-%d").setDaemon(true).build());
+
+    // guild ID -> settings, guilds with no settings document are cached with the defaults
+    private final LoadingCache<String, GuildSettings> cache = CacheBuilder.newBuilder()
+            .maximumSize(50000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build(new CacheLoader<String, GuildSettings>()
+            {
+                @Override
+                public GuildSettings load(String guildId)
+                {
+                    Document guildDoc = Main.getDBDriver().getGuildCollection().find(eq("_id", guildId)).first();
+                    return guildDoc == null ? new GuildSettings(defaults(guildId), false) : new GuildSettings(guildDoc, true);
+                }
+            });
+
+    /**
+     * loads the prefix index, should be called once the database driver is ready
+     */
+    public void init()
+    {
+        this.loadPrefixes();
+        this.prefixLoader.scheduleWithFixedDelay(this::loadPrefixes, 10, 10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * rebuilds the prefix index from the guild collection
+     */
+    private void loadPrefixes()
+    {
+        try
+        {
+            List<String> prefixes = new ArrayList<>();
+            prefixes.add(Main.getBotSettingsManager().getCommandPrefix()); // guilds without a settings document
+            Main.getDBDriver().getGuildCollection().distinct("prefix", String.class).into(prefixes);
+            this.prefixIndex.reset(prefixes);
+        }
+        catch (Exception e)
+        {
+            Logging.exception(this.getClass(), e);
+        }
+    }
+
+    /**
+     * @return the index of prefixes in use
+     */
+    public PrefixIndex getPrefixIndex()
+    {
+        return this.prefixIndex;
+    }
+
     /**
      * retrieves the guild settings object for a guild
+     * a guild with no settings document is given the defaults, the document is created by the first setter used
      * @param guildId ID of guild
      * @return GuildSettings object (never null)
      */
     public GuildSettings getGuildSettings(String guildId)
     {
-        Document guildDoc = Main.getDBDriver().getGuildCollection().find(eq("_id", guildId)).first();
+        return this.cache.getUnchecked(guildId);
+    }
 
-        if (guildDoc == null) // create a new guild document and add to db
-        {
-            // unrestricted commands are commands that may be used outside of the command channel
-            ArrayList<String> unrestrictedCommands = new ArrayList<>(Arrays.asList(
-                    new ListCommand().name(),
-                    new HelpCommand().name(),
-                    new SchedulesCommand().name(),
-                    new EventsCommand().name(),
-                    new DiagnoseCommand().name())); // defaults
-
-            // initialize with defaults
-            guildDoc = new Document()
-                    .append("_id", guildId)
-                    .append("prefix", Main.getBotSettingsManager().getCommandPrefix())
-                    .append("unrestricted_commands", unrestrictedCommands)
-                    .append("late_threshold", 15);
+    /**
+     * discards the cached settings for a guild, should be used when the guild's document is removed
+     * @param guildId ID of guild
+     */
+    public void invalidate(String guildId)
+    {
+        this.cache.invalidate(guildId);
+    }
 
-            Main.getDBDriver().getGuildCollection().insertOne(guildDoc);
-        }
+    /**
+     * @return hit/miss statistics of the settings cache
+     */
+    public CacheStats getCacheStats()
+    {
+        return this.cache.stats();
+    }
 
-        return new GuildSettings(guildDoc);
+    /**
+     * @return number of guilds with cached settings
+     */
+    public long getCacheSize()
+    {
+        return this.cache.size();
+    }
+
+    /**
+     * @return number of cached guilds which are using the defaults and have no settings document
+     */
+    public long getUnsavedCount()
+    {
+        return this.cache.asMap().values().stream().filter(gs -> !gs.saved).count();
+    }
+
+    /**
+     * creates the default settings document for a guild
+     */
+    private static Document defaults(String guildId)
+    {
+        // unrestricted commands are commands that may be used outside of the command channel
+        ArrayList<String> unrestrictedCommands = new ArrayList<>(Arrays.asList(
+                new ListCommand().name(),
+                new HelpCommand().name(),
+                new SchedulesCommand().name(),
+                new EventsCommand().name(),
+                new DiagnoseCommand().name())); // defaults
+
+        // initialize with defaults
+        return new Document()
+                .append("_id", guildId)
+                .append("prefix", Main.getBotSettingsManager().getCommandPrefix())
+                .append("unrestricted_commands", unrestrictedCommands)
+                .append("late_threshold", 15);
     }
 
     /**
      * object for getting and setting guild options
+     * instances are shared through the cache, setters update both the object and the database
      */
     @SuppressWarnings("unchecked")
     public static class GuildSettings
     {
-        String guildId;
-        String commandPrefix;
-        ArrayList<String> unrestrictedCommands;
-        String commandChannelId;
-        Integer lateThreshold;
+        final String guildId;
+        volatile String commandPrefix;
+        volatile List<String> unrestrictedCommands;
+        volatile String commandChannelId;
+        volatile Integer lateThreshold;
+        volatile boolean saved;     // whether the guild has a settings document
 
-        GuildSettings(Document guildDocument)
+        GuildSettings(Document guildDocument, boolean saved)
         {
             guildId = guildDocument.getString("_id");
             commandPrefix = guildDocument.getString("prefix");
             commandChannelId = guildDocument.get("command_channel") != null ?
                     guildDocument.getString("command_channel") : null;
-            unrestrictedCommands = (ArrayList<String>) guildDocument.get("unrestricted_commands");
+            unrestrictedCommands = Collections.unmodifiableList(
+                    new ArrayList<>((List<String>) guildDocument.get("unrestricted_commands")));
             lateThreshold = guildDocument.get("late_threshold") != null ?
                     guildDocument.getInteger("late_threshold") : 15;
+            this.saved = saved;
         }
 
         // **** getters ****
@@ -82,9 +188,25 @@ public class GuildSettingsManager
             return this.commandChannelId;
         }
 
+        /**
+         * @return a copy of the guild's unrestricted commands
+         */
         public ArrayList<String> getUnrestrictedCommands()
         {
-            return unrestrictedCommands;
+            return new ArrayList<>(unrestrictedCommands);
+        }
+
+        /**
+         * @param content command string, with the prefix removed
+         * @return true if the content begins with one of the guild's unrestricted commands
+         */
+        public boolean isUnrestricted(String content)
+        {
+            for (String command : unrestrictedCommands)
+            {
+                if (content.startsWith(command)) return true;
+            }
+            return false;
         }
 
         public ArrayList<String> getRestrictedCommands()
@@ -101,33 +223,55 @@ public class GuildSettingsManager
 
         // **** setters ****
 
-        public void setPrefix(String prefix)
+        public synchronized void setPrefix(String prefix)
         {
-            Main.getDBDriver().getGuildCollection()
-                    .updateOne(eq("_id", guildId), set("prefix", prefix));
             this.commandPrefix = prefix;
+            Main.getGuildSettingsManager().getPrefixIndex().add(prefix);
+            this.write(set("prefix", prefix));
         }
 
-        public void setCommandChannelId(String channelId)
+        public synchronized void setCommandChannelId(String channelId)
         {
-            Main.getDBDriver().getGuildCollection()
-                    .updateOne(eq("_id", guildId), set("command_channel", channelId));
             this.commandChannelId = channelId;
+            this.write(set("command_channel", channelId));
         }
 
-        public void setUnrestrictedCommands(ArrayList<String> unrestrictedCommands)
+        public synchronized void setUnrestrictedCommands(ArrayList<String> unrestrictedCommands)
         {
-            Main.getDBDriver().getGuildCollection().updateOne(eq("_id", guildId),
-                    set("unrestricted_commands", unrestrictedCommands));
-            this.unrestrictedCommands = unrestrictedCommands;
+            this.unrestrictedCommands = Collections.unmodifiableList(new ArrayList<>(unrestrictedCommands));
+            this.write(set("unrestricted_commands", unrestrictedCommands));
         }
 
-        public void setLateThreshold(Integer minutes)
+        public synchronized void setLateThreshold(Integer minutes)
         {
-            Main.getDBDriver().getGuildCollection()
-                    .updateOne(eq("_id", guildId), set("late_threshold", minutes));
             this.lateThreshold = minutes;
+            this.write(set("late_threshold", minutes));
         }
 
+        /**
+         * writes a setting change to the database,
+         * if the guild has no settings document the complete document is created instead
+         */
+        private void write(Bson update)
+        {
+            if (this.saved)
+            {
+                Main.getDBDriver().getGuildCollection().updateOne(eq("_id", guildId), update);
+                return;
+            }
+
+            Document guildDoc = new Document()
+                    .append("_id", guildId)
+                    .append("prefix", commandPrefix)
+                    .append("unrestricted_commands", new ArrayList<>(unrestrictedCommands))
+                    .append("late_threshold", lateThreshold);
+            if (commandChannelId != null)
+            {
+                guildDoc.append("command_channel", commandChannelId);
+            }
+            Main.getDBDriver().getGuildCollection()
+                    .replaceOne(eq("_id", guildId), guildDoc, new ReplaceOptions().upsert(true));
+            this.saved = true;
+        }
     }
 }
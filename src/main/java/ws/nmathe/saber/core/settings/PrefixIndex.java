@@ -0,0 +1,140 @@
+package ws.nmathe.saber.core.settings;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of every command prefix in use, used to discard messages which cannot be commands
+ * without looking up the guild's settings.
+ * The index is a table of first characters leading into a trie of the remaining characters.
+ * It is rebuilt (copy-on-write) whenever a prefix is added, which is rare compared to lookups,
+ * so lookups need no locking. The index may hold prefixes no longer used by any guild,
+ * which only costs a settings lookup for messages starting with the stale prefix.
+ */
+public class PrefixIndex
+{
+    private final Set<String> pinned = new HashSet<>();     // prefixes kept across resets
+    private final Set<String> prefixes = new HashSet<>();   // guild prefixes
+    private volatile Table table = new Table();
+
+    /**
+     * adds a prefix which is never removed by a reset
+     * @param prefix the prefix
+     */
+    public synchronized void pin(String prefix)
+    {
+        if (this.pinned.add(prefix)) this.rebuild();
+    }
+
+    /**
+     * adds a guild prefix to the index
+     * @param prefix the prefix
+     */
+    public synchronized void add(String prefix)
+    {
+        if (prefix == null) return;
+        if (!this.pinned.contains(prefix) && this.prefixes.add(prefix)) this.rebuild();
+    }
+
+    /**
+     * replaces the guild prefixes in the index
+     * @param prefixes every guild prefix in use
+     */
+    public synchronized void reset(Collection<String> prefixes)
+    {
+        this.prefixes.clear();
+        for (String prefix : prefixes)
+        {
+            if (prefix != null) this.prefixes.add(prefix);
+        }
+        this.rebuild();
+    }
+
+    /**
+     * @return number of prefixes in the index
+     */
+    public synchronized int size()
+    {
+        return this.pinned.size() + this.prefixes.size();
+    }
+
+    /**
+     * determines if a message begins with any indexed prefix,
+     * leading whitespace is ignored (as when the message is trimmed)
+     * @param content the raw message content
+     * @return false if the message cannot be a command
+     */
+    public boolean mayBeCommand(String content)
+    {
+        Table table = this.table;
+        if (table.matchAll) return true;
+
+        int len = content.length();
+        int i = 0;
+        while (i < len && content.charAt(i) <= ' ') i++;
+        if (i == len) return false;
+
+        char c = content.charAt(i);
+        Node node = c < 128 ? table.ascii[c] : table.other.get(c);
+        while (node != null)
+        {
+            if (node.terminal) return true;
+            if (++i == len) return false;
+            node = node.children.get(content.charAt(i));
+        }
+        return false;
+    }
+
+    private void rebuild()
+    {
+        Table table = new Table();
+        for (String prefix : this.pinned) table.insert(prefix);
+        for (String prefix : this.prefixes) table.insert(prefix);
+        this.table = table;
+    }
+
+    /**
+     * first character table, nodes are not modified once the table is published
+     */
+    private static class Table
+    {
+        private final Node[] ascii = new Node[128];
+        private final Map<Character, Node> other = new HashMap<>();
+        private boolean matchAll = false;   // an empty prefix matches every message
+
+        private void insert(String prefix)
+        {
+            if (prefix.isEmpty())
+            {
+                this.matchAll = true;
+                return;
+            }
+
+            char c = prefix.charAt(0);
+            Node node;
+            if (c < 128)
+            {
+                if (this.ascii[c] == null) this.ascii[c] = new Node();
+                node = this.ascii[c];
+            }
+            else
+            {
+                node = this.other.computeIfAbsent(c, k -> new Node());
+            }
+            for (int i = 1; i < prefix.length(); i++)
+            {
+                node = node.children.computeIfAbsent(prefix.charAt(i), k -> new Node());
+            }
+            node.terminal = true;
+        }
+    }
+
+    private static class Node
+    {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private boolean terminal = false;
+    }
+}
@@ -1,9 +1,13 @@
 package ws.nmathe.saber.utils;
 
+import net.dv8tion.jda.api.entities.GuildMessageChannel;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.emoji.Emoji;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.exceptions.PermissionException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import net.dv8tion.jda.api.utils.messages.MessageEditData;
 
@@ -172,6 +176,37 @@ public class MessageUtilities
         }
     }
 
+    /**
+     * replaces the content of a message identified by its ID, the message is not retrieved beforehand
+     * , asynchronous (non-blocking)
+     * @param newMsg the new message content
+     * @param chan the channel the message was sent to
+     * @param msgId ID of the message to edit
+     * @param action a non null Consumer will do operations on the results returned
+     */
+    public static void editMsgById(MessageEditData newMsg, MessageChannel chan, String msgId, Consumer<Message> action)
+    {
+        editMsgById(newMsg, chan, msgId, action, null);
+    }
+
+    /// version which is told when the message no longer exists
+    public static void editMsgById(MessageEditData newMsg, MessageChannel chan, String msgId,
+                                   Consumer<Message> action, Runnable missing)
+    {
+        if (newMsg == null || chan == null || msgId == null) return;
+        if (newMsg.getContent().isEmpty() && newMsg.getEmbeds().isEmpty()) return;
+
+        try
+        {
+            chan.editMessageById(msgId, newMsg).queue(action, e -> onByIdFailure(e, missing));
+        }
+        catch (PermissionException ignored) {}
+        catch (Exception e)
+        {
+            Logging.exception(MessageUtilities.class, e);
+        }
+    }
+
     /**
      * attempts to remove a message, asynchronous (non-blocking)
      * @param msg the message to delete
@@ -209,4 +244,84 @@ public class MessageUtilities
         }
         return null;
     }
+
+    /**
+     * attempts to remove a message identified by its ID, asynchronous (non-blocking)
+     * @param chan the channel the message was sent to
+     * @param msgId ID of the message to delete
+     * @param action a non null Consumer will do operations on the results returned
+     */
+    public static void deleteMsgById(MessageChannel chan, String msgId, Consumer<Void> action)
+    {
+        if (chan == null || msgId == null) return;
+
+        try
+        {
+            chan.deleteMessageById(msgId).queue(action, e -> onByIdFailure(e, null));
+        }
+        catch (PermissionException ignored) { }
+        catch (Exception e)
+        {
+            Logging.exception(MessageUtilities.class, e);
+        }
+    }
+
+    /**
+     * adds a reaction to a message identified by its ID, asynchronous (non-blocking)
+     * @param chan the channel the message was sent to
+     * @param msgId ID of the message to react to
+     * @param emoji the reaction to add
+     */
+    public static void addReactionById(MessageChannel chan, String msgId, Emoji emoji)
+    {
+        if (chan == null || msgId == null) return;
+
+        try
+        {
+            chan.addReactionById(msgId, emoji).queue(null, e -> onByIdFailure(e, null));
+        }
+        catch (PermissionException ignored) { }
+        catch (Exception e)
+        {
+            Logging.exception(MessageUtilities.class, e);
+        }
+    }
+
+    /**
+     * removes all reactions from a message identified by its ID, asynchronous (non-blocking)
+     * @param chan the channel the message was sent to
+     * @param msgId ID of the message to clear
+     * @param action a non null Consumer will do operations on the results returned
+     */
+    public static void clearReactionsById(GuildMessageChannel chan, String msgId, Consumer<Void> action)
+    {
+        if (chan == null || msgId == null) return;
+
+        try
+        {
+            chan.clearReactionsById(msgId).queue(action, e -> onByIdFailure(e, null));
+        }
+        catch (PermissionException ignored) { }
+        catch (Exception e)
+        {
+            Logging.exception(MessageUtilities.class, e);
+        }
+    }
+
+    /**
+     * failure handler for requests made by message ID,
+     * a message which no longer exists is not logged, and is reported to the caller if it asked
+     * @param missing run if the message no longer exists (may be null)
+     */
+    private static void onByIdFailure(Throwable e, Runnable missing)
+    {
+        if (e instanceof PermissionException) return;
+        if (e instanceof ErrorResponseException &&
+                ((ErrorResponseException) e).getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE)
+        {
+            if (missing != null) missing.run();
+            return;
+        }
+        Logging.exception(MessageUtilities.class, e);
+    }
 }